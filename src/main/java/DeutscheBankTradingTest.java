@@ -8,33 +8,37 @@ import java.util.List;
 public class DeutscheBankTradingTest {
     public static void main(String[] args) {
         Assert.assertEquals("Incorrect input args. ", 4, args.length);
-        Support.setInputDir(args[0]);
-        Assert.assertTrue(Support.checkInputDirectory());
-        Support.setOutpudDir(args[1]);
-        Assert.assertTrue(Support.checkOutputDirectory());
-        Support.setStartDate(args[2]);
-        Support.setEndDate(args[3]);
+        TradingJob job = TradingJob.builder()
+                .setInputDir(args[0])
+                .setOutputPath(args[1])
+                .setStartDate(args[2])
+                .setEndDate(args[3])
+                .build();
+        Assert.assertTrue(job.checkInputDirectory());
+        Assert.assertTrue(job.checkOutputDirectory());
 
-//        Support.setInputDir("F:\\DeutscheBankTradingTest\\input\\");
-//        Assert.assertTrue(Support.checkInputDirectory());
-//        Support.setOutpudDir("F:\\DeutscheBankTradingTest\\output\\output.csv");
-//        Assert.assertTrue(Support.checkOutputDirectory());
-//        Support.setStartDate("2017-11-25");
-//        Support.setEndDate("2017-11-28");
+//        TradingJob job = TradingJob.builder()
+//                .setInputDir("F:\\DeutscheBankTradingTest\\input\\")
+//                .setOutputPath("F:\\DeutscheBankTradingTest\\output\\output.csv")
+//                .setStartDate("2017-11-25")
+//                .setEndDate("2017-11-28")
+//                .build();
 
         long l = System.currentTimeMillis();
 
-        List<String> generatedData = TradingGenerator.generate();
+        List<String> generatedData = TradingGenerator.generate(job);
 //        generatedData.forEach(System.out::println);
         System.out.println("It took "+(System.currentTimeMillis() - l) + " ms to generate all input files.");
 
         l = System.currentTimeMillis();
-        List<TradingEvents> allEvents = TradingParser.parseCsvData();
+        List<TradingEvents> allEvents = TradingParser.parseCsvData(job);
         System.out.println("It took "+(System.currentTimeMillis() - l) + " ms to parse all input files.");
 
         l = System.currentTimeMillis();
-        String result = TradingParser.calculateResultString(allEvents);
-        TradingParser.writeResult(result);
-        System.out.println("It took "+(System.currentTimeMillis() - l) + " ms to calculate result and write it.");
+        TradingRankings rankings = new TradingRankings(job.getRankingSize());
+        byte[] result = TradingParser.calculateResultBytes(job, allEvents, rankings);
+        TradingParser.writeResult(job, result);
+        TradingParser.writeRankings(job, rankings);
+        System.out.println("It took "+(System.currentTimeMillis() - l) + " ms to calculate result and rankings and write them.");
     }
 }
@@ -0,0 +1,202 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A sidecar index of an input csv file: the exact set of instruments traded in the file and,
+ * for every instrument, the blocks of lines it occurs in. Blocks are line-aligned byte ranges of roughly equal size.
+ * <p>
+ * The index is stored next to the file as {@code <file name>.idx} and is written either by {@link TradingGenerator}
+ * or at first parse of the file. It is ignored once the file's length or modification time changes.
+ * Runs filtered by instrument use it to skip files and blocks that can't contain requested instruments.
+ */
+public class InstrumentIndex {
+    public static final String INDEX_EXTENSION = ".idx";
+    private static final int MAGIC = 0x54494458; // "TIDX"
+    private static final int VERSION = 1;
+
+    private final long sourceLength;
+    private final long sourceLastModified;
+    private final long[] blockOffsets;
+    private final Map<String, BitSet> instrumentBlocks;
+
+    private InstrumentIndex(long sourceLength, long sourceLastModified, long[] blockOffsets, Map<String, BitSet> instrumentBlocks) {
+        this.sourceLength = sourceLength;
+        this.sourceLastModified = sourceLastModified;
+        this.blockOffsets = blockOffsets;
+        this.instrumentBlocks = instrumentBlocks;
+    }
+
+    /**
+     * Get sidecar index file for input file
+     *
+     * @param file - input csv file
+     * @return index file, it may not exist
+     */
+    public static File indexFileFor(File file) {
+        return new File(file.getPath() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Reads index of input file
+     *
+     * @param file - input csv file
+     * @return {@link InstrumentIndex} or null if there is no index, it can't be read or the file was changed after indexing
+     */
+    public static InstrumentIndex read(File file) {
+        File indexFile = indexFileFor(file);
+        if (!indexFile.isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            long sourceLength = in.readLong();
+            long sourceLastModified = in.readLong();
+            if (sourceLength != file.length() || sourceLastModified != file.lastModified())
+                return null;
+            long[] blockOffsets = new long[in.readInt()];
+            for (int i = 0; i < blockOffsets.length; i++)
+                blockOffsets[i] = in.readLong();
+            int instruments = in.readInt();
+            Map<String, BitSet> instrumentBlocks = new HashMap<>(instruments * 2);
+            for (int i = 0; i < instruments; i++) {
+                String instrument = in.readUTF();
+                long[] words = new long[in.readInt()];
+                for (int w = 0; w < words.length; w++)
+                    words[w] = in.readLong();
+                instrumentBlocks.put(instrument, BitSet.valueOf(words));
+            }
+            return new InstrumentIndex(sourceLength, sourceLastModified, blockOffsets, instrumentBlocks);
+        } catch (IOException e) {
+            // a broken index is the same as no index, the file will be parsed and indexed again
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index next to input file. Index is written into a temporary file first and then moved,
+     * so that parallel jobs never see a partially written index
+     *
+     * @param file - input csv file
+     * @return true if the index was written
+     */
+    public boolean write(File file) {
+        File indexFile = indexFileFor(file);
+        File tmpFile = null;
+        try {
+            tmpFile = File.createTempFile(file.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceLength);
+                out.writeLong(sourceLastModified);
+                out.writeInt(blockOffsets.length);
+                for (long offset : blockOffsets)
+                    out.writeLong(offset);
+                out.writeInt(instrumentBlocks.size());
+                for (Map.Entry<String, BitSet> entry : new TreeMap<>(instrumentBlocks).entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    long[] words = entry.getValue().toLongArray();
+                    out.writeInt(words.length);
+                    for (long word : words)
+                        out.writeLong(word);
+                }
+            }
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            // input directory could be read-only, runs are correct without index, just slower
+            if (tmpFile != null)
+                tmpFile.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Checks if the file has trades of at least one of instruments
+     *
+     * @param instruments - requested instruments
+     * @return true if at least one instrument is traded in the file
+     */
+    public boolean containsAny(Set<String> instruments) {
+        return instruments.stream().anyMatch(instrumentBlocks::containsKey);
+    }
+
+    /**
+     * Get byte ranges of the file that contain all lines of requested instruments. Adjacent blocks are merged
+     *
+     * @param instruments - requested instruments
+     * @return ranges as pairs of start (inclusive) and end (exclusive) offsets: {start0, end0, start1, end1, ...}.
+     * Empty if none of instruments is traded in the file
+     */
+    public long[] getBlockRanges(Set<String> instruments) {
+        BitSet blocks = new BitSet(blockOffsets.length);
+        for (String instrument : instruments) {
+            BitSet instrumentBlocks = this.instrumentBlocks.get(instrument);
+            if (instrumentBlocks != null)
+                blocks.or(instrumentBlocks);
+        }
+        long[] ranges = new long[2 * blocks.cardinality()];
+        int size = 0;
+        for (int block = blocks.nextSetBit(0); block >= 0 && block < blockOffsets.length; block = blocks.nextSetBit(block + 1)) {
+            long start = blockOffsets[block];
+            long end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : sourceLength;
+            if (size > 0 && ranges[size - 1] == start) {
+                ranges[size - 1] = end;
+            } else {
+                ranges[size++] = start;
+                ranges[size++] = end;
+            }
+        }
+        return Arrays.copyOf(ranges, size);
+    }
+
+    /**
+     * Collects instruments and line offsets of a file while it is being written or parsed.
+     * Lines should be added in file order
+     */
+    public static class Builder {
+        private final int blockSize;
+        private long[] blockOffsets = new long[16];
+        private int blocks;
+        private final Map<String, BitSet> instrumentBlocks = new HashMap<>();
+
+        /**
+         * @param blockSize - approximate size of a block in bytes. A new block starts at the first line after it
+         */
+        public Builder(int blockSize) {
+            if (blockSize <= 0)
+                throw new IllegalArgumentException("Block size should be positive: " + blockSize);
+            this.blockSize = blockSize;
+        }
+
+        /**
+         * Adds a line of the file
+         *
+         * @param instrument - instrument traded in the line
+         * @param offset - offset of the line start in the file
+         */
+        public void addLine(String instrument, long offset) {
+            if (blocks == 0 || offset - blockOffsets[blocks - 1] >= blockSize) {
+                if (blocks == blockOffsets.length)
+                    blockOffsets = Arrays.copyOf(blockOffsets, blocks * 2);
+                // the first block always starts at the beginning of the file
+                blockOffsets[blocks] = blocks == 0 ? 0 : offset;
+                blocks++;
+            }
+            instrumentBlocks.computeIfAbsent(instrument, i -> new BitSet()).set(blocks - 1);
+        }
+
+        /**
+         * Builds index of the file
+         *
+         * @param sourceLength - length of the indexed file
+         * @param sourceLastModified - modification time of the indexed file
+         * @return {@link InstrumentIndex}
+         */
+        public InstrumentIndex build(long sourceLength, long sourceLastModified) {
+            return new InstrumentIndex(sourceLength, sourceLastModified, Arrays.copyOf(blockOffsets, blocks), new HashMap<>(instrumentBlocks));
+        }
+    }
+}
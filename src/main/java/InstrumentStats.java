@@ -0,0 +1,118 @@
+/**
+ * Aggregated trading data of one instrument: close (price of the last trade of a day), max/min prices and volume.
+ * Covers a single day on one exchange when calculated by {@link TradingEvents#getInstrumentStats(String)},
+ * or a range of days (and exchanges) when copies are combined with {@link #combine(InstrumentStats)}.
+ * Prices are fixed-point hundredths, see {@link Support#parsePrice(String)}
+ */
+public class InstrumentStats {
+    private final String exchange;
+    private final String instrument;
+    private String firstDate;
+    private String lastDate;
+    private long firstClose;
+    private long lastClose;
+    private long maxPrice;
+    private long minPrice;
+    private long volume;
+
+    public InstrumentStats(String exchange, String date, String instrument, long close, long maxPrice, long minPrice, long volume) {
+        this.exchange = exchange;
+        this.instrument = instrument;
+        this.firstDate = date;
+        this.lastDate = date;
+        this.firstClose = close;
+        this.lastClose = close;
+        this.maxPrice = maxPrice;
+        this.minPrice = minPrice;
+        this.volume = volume;
+    }
+
+    /**
+     * Creates a copy of stats to aggregate other stats into, so that the original stays unchanged
+     *
+     * @param exchange - exchange of the aggregate, for example {@link TradingRankings#ALL_EXCHANGES}
+     * @param stats - stats to copy
+     */
+    public InstrumentStats(String exchange, InstrumentStats stats) {
+        this.exchange = exchange;
+        this.instrument = stats.instrument;
+        this.firstDate = stats.firstDate;
+        this.lastDate = stats.lastDate;
+        this.firstClose = stats.firstClose;
+        this.lastClose = stats.lastClose;
+        this.maxPrice = stats.maxPrice;
+        this.minPrice = stats.minPrice;
+        this.volume = stats.volume;
+    }
+
+    /**
+     * Combines stats of other days or exchanges of the same instrument into this object. Stats could come in any order:
+     * first and last closes are taken from the earliest and the latest dates, on equal dates the current ones are kept
+     *
+     * @param other - stats to combine, it is not changed
+     * @return this object
+     */
+    public InstrumentStats combine(InstrumentStats other) {
+        if (other.firstDate.compareTo(firstDate) < 0) {
+            firstDate = other.firstDate;
+            firstClose = other.firstClose;
+        }
+        if (other.lastDate.compareTo(lastDate) > 0) {
+            lastDate = other.lastDate;
+            lastClose = other.lastClose;
+        }
+        maxPrice = Math.max(maxPrice, other.maxPrice);
+        minPrice = Math.min(minPrice, other.minPrice);
+        volume += other.volume;
+        return this;
+    }
+
+    /**
+     * Get intraday (or intra-range) price range relative to min price: (max - min) / min
+     *
+     * @return range ratio, 0 if min price is not positive
+     */
+    public double getRange() {
+        return minPrice <= 0 ? 0 : (double) (maxPrice - minPrice) / minPrice;
+    }
+
+    /**
+     * Get close-to-close price move relative to the first close: (last close - first close) / first close
+     *
+     * @return signed move ratio, 0 if the first close is not positive
+     */
+    public double getMove() {
+        return firstClose <= 0 ? 0 : (double) (lastClose - firstClose) / firstClose;
+    }
+
+    /**
+     * Some getters
+     */
+    public String getExchange() {
+        return exchange;
+    }
+    public String getInstrument() {
+        return instrument;
+    }
+    public String getFirstDate() {
+        return firstDate;
+    }
+    public String getLastDate() {
+        return lastDate;
+    }
+    public long getFirstClose() {
+        return firstClose;
+    }
+    public long getLastClose() {
+        return lastClose;
+    }
+    public long getMaxPrice() {
+        return maxPrice;
+    }
+    public long getMinPrice() {
+        return minPrice;
+    }
+    public long getVolume() {
+        return volume;
+    }
+}
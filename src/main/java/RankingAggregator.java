@@ -0,0 +1,68 @@
+import java.util.*;
+
+/**
+ * Aggregates day results into per-instrument stats over the whole [startDate, endDate] window and feeds
+ * {@link TradingRankings} while day results are being calculated.
+ * <p>
+ * Day results come from worker threads in any order. As soon as the last day of an exchange is added, aggregates of
+ * the exchange are final and go into its rankings. When all exchanges are done, their aggregates are combined by ISIN
+ * in alphabetical order of exchanges and go into {@link TradingRankings#ALL_EXCHANGES} rankings.
+ * Day stats are never changed, aggregates are built from copies.
+ */
+public class RankingAggregator {
+    private final TradingRankings rankings;
+    private final Map<String, Integer> remainingDays;
+    private final Map<String, Map<String, InstrumentStats>> exchangeAggregates = new HashMap<>();
+    private final Map<String, Collection<InstrumentStats>> finishedExchanges = new TreeMap<>();
+
+    /**
+     * @param rankings - rankings to feed
+     * @param daysPerExchange - number of day results that will be added for every exchange
+     */
+    public RankingAggregator(TradingRankings rankings, Map<String, Integer> daysPerExchange) {
+        this.rankings = rankings;
+        this.remainingDays = new HashMap<>(daysPerExchange);
+        if (remainingDays.isEmpty())
+            finishAllExchanges();
+    }
+
+    /**
+     * Adds results of one day of an exchange
+     *
+     * @param exchange - exchange
+     * @param dayStats - stats of all instruments traded on the exchange that day
+     */
+    public synchronized void addDay(String exchange, List<InstrumentStats> dayStats) {
+        Map<String, InstrumentStats> aggregates = exchangeAggregates.computeIfAbsent(exchange, e -> new HashMap<>());
+        for (InstrumentStats stats : dayStats) {
+            InstrumentStats aggregate = aggregates.get(stats.getInstrument());
+            if (aggregate == null)
+                aggregates.put(stats.getInstrument(), new InstrumentStats(exchange, stats));
+            else
+                aggregate.combine(stats);
+        }
+        if (remainingDays.merge(exchange, -1, Integer::sum) == 0) {
+            remainingDays.remove(exchange);
+            Collection<InstrumentStats> finished = exchangeAggregates.remove(exchange).values();
+            finished.forEach(rankings::offer);
+            finishedExchanges.put(exchange, finished);
+            if (remainingDays.isEmpty())
+                finishAllExchanges();
+        }
+    }
+
+    private void finishAllExchanges() {
+        Map<String, InstrumentStats> allAggregates = new HashMap<>();
+        for (Collection<InstrumentStats> finished : finishedExchanges.values()) {
+            for (InstrumentStats stats : finished) {
+                InstrumentStats aggregate = allAggregates.get(stats.getInstrument());
+                if (aggregate == null)
+                    allAggregates.put(stats.getInstrument(), new InstrumentStats(TradingRankings.ALL_EXCHANGES, stats));
+                else
+                    aggregate.combine(stats);
+            }
+        }
+        finishedExchanges.clear();
+        allAggregates.values().forEach(rankings::offer);
+    }
+}
@@ -0,0 +1,302 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads lines of a file through {@link AsynchronousFileChannel}, keeping several large reads in flight ahead of the
+ * line that is being parsed. So the parsing thread doesn't wait for storage as long as reads keep up with it.
+ * <p>
+ * Number of reads in flight is limited per file and by a {@link Semaphore} shared by all files read at the same time.
+ * The first read of a file always waits for a shared permit, further read-ahead is issued only if a permit is free.
+ * Permits are returned as soon as a read completes, so a slow consumer never holds them.
+ * <p>
+ * Line terminators are the same as for {@link BufferedReader#readLine()}: '\n', '\r' or "\r\n".
+ * Instead of the whole file, the reader could read a list of line-aligned byte ranges, for example blocks
+ * of an {@link InstrumentIndex}.
+ */
+public class ReadAheadLineReader implements Closeable {
+    private final AsynchronousFileChannel channel;
+    private final Charset charset;
+    private final long fileSize;
+    /** Pairs of start and end offsets of ranges to read */
+    private final long[] ranges;
+    private int rangeIndex;
+    private final int blockSize;
+    private final int readsInFlight;
+    private final Semaphore sharedPermits;
+    private final ArrayDeque<PendingRead> pendingReads = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+    private long nextPosition;
+
+    /** Block that is being split into lines */
+    private ByteBuffer current;
+    /** File offsets of the current block start and end */
+    private long currentPosition;
+    private long currentEnd;
+    /** Beginning of a line that didn't fit into previous blocks */
+    private byte[] carry = new byte[256];
+    private int carryLength;
+    private long carryOffset;
+    private boolean skipLF;
+    private long lineOffset = -1;
+
+    /**
+     * @param file - file to read
+     * @param blockSize - size of a single read in bytes
+     * @param readsInFlight - maximum number of reads in flight for this file
+     * @param sharedPermits - limits number of reads in flight across all files
+     */
+    public ReadAheadLineReader(File file, int blockSize, int readsInFlight, Semaphore sharedPermits) throws IOException {
+        this(file, null, blockSize, readsInFlight, sharedPermits);
+    }
+
+    /**
+     * @param file - file to read
+     * @param ranges - pairs of start (inclusive) and end (exclusive) offsets of line-aligned ranges to read, in file order.
+     *               Null to read the whole file
+     * @param blockSize - size of a single read in bytes
+     * @param readsInFlight - maximum number of reads in flight for this file
+     * @param sharedPermits - limits number of reads in flight across all files
+     */
+    public ReadAheadLineReader(File file, long[] ranges, int blockSize, int readsInFlight, Semaphore sharedPermits) throws IOException {
+        if (blockSize <= 0 || readsInFlight <= 0)
+            throw new IllegalArgumentException("Block size and reads in flight should be positive");
+        this.channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.charset = Charset.defaultCharset();
+        this.blockSize = blockSize;
+        this.readsInFlight = readsInFlight;
+        this.sharedPermits = sharedPermits;
+        try {
+            this.fileSize = channel.size();
+            this.ranges = ranges != null ? ranges : new long[]{0, fileSize};
+            this.nextPosition = this.ranges.length > 0 ? this.ranges[0] : 0;
+            issueReads();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads next line
+     *
+     * @return line without terminator or null if end of file is reached
+     */
+    public String readLine() throws IOException {
+        while (true) {
+            if (current == null || !current.hasRemaining()) {
+                if (current != null)
+                    freeBuffers.push(current);
+                current = nextBlock();
+                if (current == null) {
+                    if (carryLength == 0)
+                        return null;
+                    String line = new String(carry, 0, carryLength, charset);
+                    carryLength = 0;
+                    lineOffset = carryOffset;
+                    return line;
+                }
+            }
+            byte[] data = current.array();
+            int start = current.position();
+            int end = current.limit();
+            if (skipLF) {
+                skipLF = false;
+                if (data[start] == '\n') {
+                    current.position(++start);
+                    continue;
+                }
+            }
+            for (int i = start; i < end; i++) {
+                byte b = data[i];
+                if (b == '\n' || b == '\r') {
+                    String line;
+                    if (carryLength == 0) {
+                        line = new String(data, start, i - start, charset);
+                        lineOffset = currentPosition + start;
+                    } else {
+                        appendToCarry(data, start, i - start);
+                        line = new String(carry, 0, carryLength, charset);
+                        carryLength = 0;
+                        lineOffset = carryOffset;
+                    }
+                    if (b == '\r') {
+                        if (i + 1 < end)
+                            i += data[i + 1] == '\n' ? 1 : 0;
+                        else
+                            skipLF = true;
+                    }
+                    current.position(i + 1);
+                    return line;
+                }
+            }
+            if (carryLength == 0)
+                carryOffset = currentPosition + start;
+            appendToCarry(data, start, end - start);
+            current.position(end);
+        }
+    }
+
+    /**
+     * Get file offset of the line returned by the last {@link #readLine()} call
+     *
+     * @return offset of the line start or -1 if no line was read yet
+     */
+    public long getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * Closes the channel. Reads that are still in flight are cancelled and return their permits
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Wait for the oldest read in flight and issue the next ones
+     *
+     * @return filled block ready for reading or null if the whole file was read
+     */
+    private ByteBuffer nextBlock() throws IOException {
+        issueReads();
+        PendingRead read = pendingReads.poll();
+        if (read == null)
+            return null;
+        try {
+            read.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading file");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        issueReads();
+        read.buffer.flip();
+        if (!read.buffer.hasRemaining()) {
+            // file was truncated while reading
+            pendingReads.clear();
+            rangeIndex = ranges.length;
+            return null;
+        }
+        if (read.position != currentEnd)
+            skipLF = false; // the block starts a range that is not adjacent to the previous one
+        currentPosition = read.position;
+        currentEnd = read.position + read.buffer.limit();
+        return read.buffer;
+    }
+
+    /**
+     * Issue reads until the window for this file is full or no shared permits are left
+     */
+    private void issueReads() throws IOException {
+        while (pendingReads.size() < readsInFlight) {
+            if (rangeIndex >= ranges.length)
+                return;
+            long rangeEnd = Math.min(ranges[rangeIndex + 1], fileSize);
+            if (nextPosition >= rangeEnd) {
+                rangeIndex += 2;
+                if (rangeIndex < ranges.length)
+                    nextPosition = ranges[rangeIndex];
+                continue;
+            }
+            if (pendingReads.isEmpty()) {
+                try {
+                    sharedPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a read permit");
+                }
+            } else if (!sharedPermits.tryAcquire()) {
+                return;
+            }
+            int length = (int) Math.min(blockSize, rangeEnd - nextPosition);
+            PendingRead read = new PendingRead(takeBuffer(length), nextPosition);
+            nextPosition += length;
+            pendingReads.add(read);
+            try {
+                channel.read(read.buffer, read.position, read, ReadHandler.INSTANCE);
+            } catch (RuntimeException e) {
+                sharedPermits.release();
+                throw e;
+            }
+        }
+    }
+
+    private ByteBuffer takeBuffer(int length) {
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer == null || buffer.capacity() < length)
+            buffer = ByteBuffer.allocate(length);
+        buffer.clear();
+        buffer.limit(length);
+        return buffer;
+    }
+
+    private void appendToCarry(byte[] data, int offset, int length) {
+        if (carryLength + length > carry.length)
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + length));
+        System.arraycopy(data, offset, carry, carryLength, length);
+        carryLength += length;
+    }
+
+    /**
+     * A read of one block that could be completed by a few channel reads
+     */
+    private class PendingRead {
+        final ByteBuffer buffer;
+        final long position;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        PendingRead(ByteBuffer buffer, long position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        void complete(Throwable error) {
+            sharedPermits.release();
+            if (error == null)
+                result.complete(null);
+            else
+                result.completeExceptionally(error);
+        }
+
+        void continueReading() {
+            try {
+                channel.read(buffer, position + buffer.position(), this, ReadHandler.INSTANCE);
+            } catch (RuntimeException e) {
+                complete(e);
+            }
+        }
+    }
+
+    /**
+     * Continues a short read until the block is full or end of file is reached
+     */
+    private static class ReadHandler implements CompletionHandler<Integer, PendingRead> {
+        static final ReadHandler INSTANCE = new ReadHandler();
+
+        @Override
+        public void completed(Integer bytesRead, PendingRead read) {
+            if (bytesRead >= 0 && read.buffer.hasRemaining())
+                read.continueReading();
+            else
+                read.complete(null);
+        }
+
+        @Override
+        public void failed(Throwable e, PendingRead read) {
+            read.complete(e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A hand-written encoder of output csv rows into a reusable byte buffer.
+ * Produces the same bytes as {@code String.format("%s, %s, %.2f, ...")} did, but without
+ * allocating anything per row. Prices are written from fixed-point hundredths (see {@link Support#parsePrice(String)}).
+ */
+public class ResultRowFormatter {
+    private static final byte[] FIELD_SEPARATOR = {',', ' '};
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
+
+    private byte[] buffer;
+    private int size;
+    /** Scratch space for writing digits of a number in reverse order */
+    private final byte[] digits = new byte[20];
+
+    public ResultRowFormatter() {
+        this(8192);
+    }
+
+    public ResultRowFormatter(int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, 64)];
+    }
+
+    /**
+     * Clears the buffer so that the formatter could be reused for the next portion of rows
+     *
+     * @return this formatter
+     */
+    public ResultRowFormatter reset() {
+        size = 0;
+        return this;
+    }
+
+    /**
+     * Appends a string. Ascii characters are copied directly, the rest of the string is encoded with default charset
+     * (the same way {@link java.io.FileWriter} does it)
+     */
+    public ResultRowFormatter append(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80)
+                return append(value.substring(i).getBytes(Charset.defaultCharset()));
+            buffer[size++] = (byte) c;
+        }
+        return this;
+    }
+
+    public ResultRowFormatter append(byte[] bytes) {
+        return append(bytes, 0, bytes.length);
+    }
+
+    public ResultRowFormatter append(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+        return this;
+    }
+
+    /**
+     * Appends ", " between two fields of a row
+     */
+    public ResultRowFormatter appendFieldSeparator() {
+        return append(FIELD_SEPARATOR);
+    }
+
+    /**
+     * Appends {@link System#lineSeparator()} between two rows
+     */
+    public ResultRowFormatter appendLineSeparator() {
+        return append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Appends decimal representation of a number, same as {@code %d}
+     */
+    public ResultRowFormatter appendLong(long value) {
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[size++] = '-';
+        } else {
+            value = -value;
+        }
+        // work with negative values, so that Long.MIN_VALUE doesn't overflow
+        int pos = 0;
+        do {
+            digits[pos++] = (byte) ('0' - (value % 10));
+            value /= 10;
+        } while (value != 0);
+        while (pos > 0)
+            buffer[size++] = digits[--pos];
+        return this;
+    }
+
+    /**
+     * Appends a fixed-point number with two decimals, for example 12345 as "123.45".
+     * Same as {@code %.2f} for the corresponding double value, used for prices stored as hundredths
+     *
+     * @param hundredths - fixed-point number
+     */
+    public ResultRowFormatter appendHundredths(long hundredths) {
+        ensureCapacity(22);
+        if (hundredths < 0) {
+            buffer[size++] = '-';
+            hundredths = -hundredths;
+        }
+        appendLong(hundredths / 100);
+        int fraction = (int) (hundredths % 100);
+        buffer[size++] = '.';
+        buffer[size++] = (byte) ('0' + fraction / 10);
+        buffer[size++] = (byte) ('0' + fraction % 10);
+        return this;
+    }
+
+    /**
+     * Write collected bytes into output stream
+     *
+     * @param out - output stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    /**
+     * Get a copy of collected bytes
+     *
+     * @return byte array
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, Charset.defaultCharset());
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+    }
+}
@@ -1,8 +1,3 @@
-import io.vavr.control.Try;
-import org.junit.Assert;
-
-import java.io.File;
-import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Random;
 import java.util.regex.Matcher;
@@ -14,179 +9,105 @@ import java.util.stream.IntStream;
  */
 
 /**
- * A support class for storing some variables that are used throughout the project
+ * A support class for storing some constants and helpers that are used throughout the project.
+ * Settings of a single run live in {@link TradingJob}
  */
 public class Support {
-    private static String inputDir;
-    private static String outpudDir;
-    private static String startDate;
-    private static String endDate;
-
-    private static int instrumentsQuantity = 10; // Quantity of instruments available for trading
-    private static int maxSubFilesQuantifier = 2; // Specifies maximum quantity of files that can be generated for each exchange per day;
-    private static int generatorOperationsFrequency = 2; // used to set how many operations will be generated per 'generatorOperationsIncrementInterval' minutes.
-    private static int generatorOperationsIncrementInterval = 10;
     public static final String[] MARKETS = {"eurex", "xetra", "moex"};
-    private static String[] instruments;
-    private static double[] initialPrices;
     public static final String MARKET_OPEN_TIME = "08:00:00.00";
     public static final String MARKET_CLOSE_TIME = "16:30:00.00";
     public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     public static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SS");
-    private static LocalDate startDateLD;
-    private static LocalDate endDateLD;
     public static final String FILE_GENERATION_ERROR = "~! ERROR OCCURED WHILE GENERATING FILE !~";
+    private static final Pattern FILE_NAME_DATE_PATTERN = Pattern.compile(".*-(\\d{4}-\\d{2}-\\d{2})(?:-\\d*)?\\.csv");
 
     public static String getDateFromFileName(String fileName) {
-        Pattern pattern = Pattern.compile(".*-(\\d{4}-\\d{2}-\\d{2})(?:-\\d*)?\\.csv");
-        Matcher m = pattern.matcher(fileName);
+        Matcher m = FILE_NAME_DATE_PATTERN.matcher(fileName);
         if (!m.find())
             return "";
         return m.group(1);
     }
 
     /**
-     * Creates some random instruments and prices used for generating trading data
+     * Parses a decimal price into fixed-point hundredths, so that prices never go through double rounding.
+     * Digits after the second decimal place are rounded half up, the same way {@code %.2f} does
+     *
+     * @param value - price string, for example "123.45"
+     * @return price in hundredths, for example 12345
+     * @throws NumberFormatException if value is not a decimal number
      */
-    private static void initInstruments() {
-        instruments = new String[instrumentsQuantity];
-        initialPrices = new double[instrumentsQuantity];
-        for (int i = 0; i < instruments.length; i++) {
-            instruments[i] = "RU000" + generateNDigitsNumber(6);
-            initialPrices[i] = ((double) new Random().nextInt(100000)) / 100;
+    public static long parsePrice(String value) {
+        int length = value.length();
+        int i = 0;
+        boolean negative = length > 0 && value.charAt(0) == '-';
+        if (negative || length > 0 && value.charAt(0) == '+')
+            i++;
+        long units = 0;
+        int fraction = 0;
+        int fractionDigits = 0;
+        boolean hasDigits = false;
+        boolean roundUp = false;
+        for (; i < length && value.charAt(i) != '.'; i++) {
+            units = Math.addExact(Math.multiplyExact(units, 10), priceDigit(value, i));
+            hasDigits = true;
         }
-    }
-
-    private static String generateNDigitsNumber(int digits) {
-        StringBuilder sb = new StringBuilder();
-        IntStream.range(0, digits).forEach(i -> sb.append(new Random().nextInt(10)));
-        return sb.toString();
-    }
-
-    /**
-     * Get generated prices for instruments
-     * @return
-     */
-    public static double[] getInitialPrices() {
-        if (null == initialPrices)
-            initInstruments();
-        return initialPrices;
-    }
-
-    /**
-     * Get generated instruments
-     * @return
-     */
-    public static String[] getInstruments() {
-        if (null == instruments)
-            initInstruments();
-        return instruments;
-    }
-
-    /**
-     * Get start date object
-     * @return {@link LocalDate} object
-     */
-    public static LocalDate getStartDateLD() {
-        if (startDateLD == null) {
-            Assert.assertFalse("Start date not specified", getStartDate() == null || getStartDate().isEmpty());
-            startDateLD = Try.of(() -> LocalDate.parse(getStartDate(), DATE_FORMAT))
-                    .getOrElseThrow(() -> new AutotestException("Couldn't parse start date " + startDate));
+        if (i < length) {
+            for (i++; i < length; i++) {
+                int digit = priceDigit(value, i);
+                if (fractionDigits < 2)
+                    fraction = fraction * 10 + digit;
+                else if (fractionDigits == 2)
+                    roundUp = digit >= 5;
+                fractionDigits++;
+                hasDigits = true;
+            }
         }
-        return startDateLD;
+        if (!hasDigits)
+            throw new NumberFormatException("Couldn't parse price \"" + value + "\"");
+        if (fractionDigits == 1)
+            fraction *= 10;
+        long hundredths = Math.addExact(Math.multiplyExact(units, 100), fraction + (roundUp ? 1 : 0));
+        return negative ? -hundredths : hundredths;
     }
 
-    /**
-     * Get end date object
-     * @return {@link LocalDate} object
-     */
-    public static LocalDate getEndDateLD() {
-        if (endDateLD == null) {
-            Assert.assertFalse("End date not specified", getEndDate() == null || getEndDate().isEmpty());
-            endDateLD = Try.of(() -> LocalDate.parse(getEndDate(), DATE_FORMAT))
-                    .getOrElseThrow(() -> new AutotestException("Couldn't parse end date "+ endDate));
-        }
-        return endDateLD;
+    private static int priceDigit(String value, int index) {
+        char c = value.charAt(index);
+        if (c < '0' || c > '9')
+            throw new NumberFormatException("Couldn't parse price \"" + value + "\"");
+        return c - '0';
     }
 
     /**
-     * Checks input directory existence and creates it if needed
+     * Creates some random instruments used for generating trading data
      *
-     * @return {@link Boolean} result
+     * @param quantity - quantity of instruments
+     * @param random - source of randomness, could be seeded to get the same instruments
+     * @return array of ISIN-like instrument names
      */
-    public static boolean checkInputDirectory() {
-        File iDir = new File(getInputDir());
-        if (!iDir.exists())
-            return iDir.mkdirs();
-        return true;
+    public static String[] generateInstruments(int quantity, Random random) {
+        String[] instruments = new String[quantity];
+        for (int i = 0; i < instruments.length; i++)
+            instruments[i] = "RU000" + generateNDigitsNumber(6, random);
+        return instruments;
     }
 
     /**
-     * Checks output path directory existence and creates it if needed
+     * Creates some random prices used for generating trading data
      *
-     * @return {@link Boolean} result
-     */
-    public static boolean checkOutputDirectory() {
-        File oPath = new File(getOutputPath());
-        if (!oPath.getParentFile().exists())
-            return oPath.getParentFile().mkdirs();
-        return true;
-    }
-
-    /**
-     * Some setters and getters
+     * @param quantity - quantity of instruments
+     * @param random - source of randomness, could be seeded to get the same prices
+     * @return array of prices
      */
-    public static void setInstrumentsQuantity(int exchanges) {
-        Support.instrumentsQuantity = exchanges;
-    }
-    public static int setInstrumentsQuantity() {
-        return Support.instrumentsQuantity;
-    }
-    public static void setInputDir(String inputDir) {
-        Support.inputDir = inputDir;
-        if (!Support.inputDir.endsWith("\\")) /* could probably make a better checks*/
-            Support.inputDir += "\\";
-    }
-    public static String getInputDir() {
-        return inputDir;
-    }
-    public static void setOutpudDir(String outpudDir) {
-        Support.outpudDir = outpudDir;
-    }
-    public static String getOutputPath() {
-        return outpudDir;
-    }
-    public static void setStartDate(String startDate) {
-        Support.startDate = startDate;
-        getStartDateLD();
-    }
-    public static String getStartDate() {
-        return startDate;
-    }
-    public static void setEndDate(String endDate) {
-        Support.endDate = endDate;
-        getEndDateLD();
+    public static double[] generateInitialPrices(int quantity, Random random) {
+        double[] initialPrices = new double[quantity];
+        for (int i = 0; i < initialPrices.length; i++)
+            initialPrices[i] = ((double) random.nextInt(100000)) / 100;
+        return initialPrices;
     }
 
-    public static String getEndDate() {
-        return endDate;
-    }
-    public static int getMaxSubFilesQuantifier() {
-        return maxSubFilesQuantifier;
-    }
-    public static void setMaxSubFilesQuantifier(int maxSubFilesQuantifier) {
-        Support.maxSubFilesQuantifier = maxSubFilesQuantifier;
-    }
-    public static void setGeneratorOperationsFrequency(int generatorOperationsFrequency) {
-        Support.generatorOperationsFrequency = generatorOperationsFrequency;
-    }
-    public static int getGeneratorOperationsFrequency() {
-        return generatorOperationsFrequency;
-    }
-    public static void setGeneratorOperationsIncrementInterval(int generatorOperationsIncrementInterval) {
-        Support.generatorOperationsIncrementInterval = generatorOperationsIncrementInterval;
-    }
-    public static int getGeneratorOperationsIncrementInterval() {
-        return generatorOperationsIncrementInterval;
+    private static String generateNDigitsNumber(int digits, Random random) {
+        StringBuilder sb = new StringBuilder();
+        IntStream.range(0, digits).forEach(i -> sb.append(random.nextInt(10)));
+        return sb.toString();
     }
 }
@@ -0,0 +1,56 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps K greatest elements of a stream in a bounded min-heap, so that a ranking costs O(n log K) instead of a full sort
+ *
+ * @param <T> - type of ranked elements
+ */
+public class TopK<T> {
+    private final int k;
+    private final Comparator<? super T> comparator;
+    private final PriorityQueue<T> heap;
+
+    /**
+     * @param k - how many elements to keep
+     * @param comparator - greater elements are ranked higher
+     */
+    public TopK(int k, Comparator<? super T> comparator) {
+        if (k <= 0)
+            throw new IllegalArgumentException("K should be positive: " + k);
+        this.k = k;
+        this.comparator = comparator;
+        this.heap = new PriorityQueue<>(k, comparator);
+    }
+
+    /**
+     * Offers an element to the ranking. It is kept only if it is among K greatest elements seen so far
+     *
+     * @param element - element to offer
+     */
+    public void offer(T element) {
+        if (heap.size() < k) {
+            heap.add(element);
+        } else if (comparator.compare(element, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(element);
+        }
+    }
+
+    /**
+     * Get kept elements from the greatest one
+     *
+     * @return a {@link List} of at most K elements
+     */
+    public List<T> toList() {
+        List<T> result = new ArrayList<>(heap);
+        result.sort(comparator.reversed());
+        return result;
+    }
+
+    public int size() {
+        return heap.size();
+    }
+}
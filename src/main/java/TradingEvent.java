@@ -11,7 +11,8 @@ public class TradingEvent {
     String instrument;
     String time;
     LocalTime timeLT;
-    double price;
+    /** Price in hundredths, see {@link Support#parsePrice(String)} */
+    long price;
     int quantity;
     String csvRowValue;
 
@@ -31,7 +32,7 @@ public class TradingEvent {
         String[] data = csvRowValue.split(",");
         instrument = data[0].trim();
         time = data[1].trim();
-        price = Double.valueOf(data[2].trim());
+        price = Support.parsePrice(data[2].trim());
         quantity = Integer.valueOf(data[3].trim());
     }
 
@@ -42,11 +43,12 @@ public class TradingEvent {
      */
     @Override
     public String toString() {
-        return String.format("%s, %s, %.2f, %d",
-                instrument,
-                time,
-                price,
-                quantity);
+        return new ResultRowFormatter(64)
+                .append(instrument).appendFieldSeparator()
+                .append(time).appendFieldSeparator()
+                .appendHundredths(price).appendFieldSeparator()
+                .appendLong(quantity)
+                .toString();
     }
 
 
@@ -71,10 +73,10 @@ public class TradingEvent {
     public String getTime() {
         return time;
     }
-    public void setPrice(double price) {
+    public void setPrice(long price) {
         this.price = price;
     }
-    public double getPrice() {
+    public long getPrice() {
         return price;
     }
     public void setQuantity(int quantity) {
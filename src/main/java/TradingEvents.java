@@ -1,7 +1,7 @@
-import java.math.BigInteger;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -10,6 +10,7 @@ import java.util.stream.Collectors;
  */
 public class TradingEvents {
     private String fileName;
+    private String date;
     private String exchange;
     private List<TradingEvent> events;
     private Set<String> tradedInstruments;
@@ -24,22 +25,10 @@ public class TradingEvents {
     };
 
     /** Comparator to sort events by descending price*/
-    private static Comparator<TradingEvent> sortByPriceDesc = (te1, te2) -> {
-        if (te1.getPrice() > te2.getPrice())
-            return -1;
-        if (te1.getPrice() < te2.getPrice())
-            return 1;
-        return 0;
-    };
+    private static Comparator<TradingEvent> sortByPriceDesc = (te1, te2) -> Long.compare(te2.getPrice(), te1.getPrice());
 
     /** Comparator to sort events by ascending price */
-    private static Comparator<TradingEvent> sortByPriceAsc = (te1, te2) -> {
-        if (te1.getPrice() < te2.getPrice())
-            return -1;
-        if (te1.getPrice() > te2.getPrice())
-            return 1;
-        return 0;
-    };
+    private static Comparator<TradingEvent> sortByPriceAsc = (te1, te2) -> Long.compare(te1.getPrice(), te2.getPrice());
 
     /**
      * Merges results of other events. For example from subfiles into current {@link TradingEvents} object
@@ -59,10 +48,12 @@ public class TradingEvents {
     }
 
     /**
-     * Get close market price for specified instrument
+     * Get close market price for specified instrument, as it is reported in result rows.
+     * Note that it is the earliest {@link TradingEvent} of the day, result output relies on it.
+     * See {@link #getLastTradeEvent(String)} for the actual last trade
      *
      * @param instrument - instrument
-     * @return last {@link TradingEvent} of the day for specified instrument.
+     * @return first {@link TradingEvent} of the day for specified instrument.
      */
     public TradingEvent getCloseMarketEvent(String instrument) {
         return events.stream()
@@ -70,6 +61,18 @@ public class TradingEvents {
                 .sorted(sortByTime).findFirst().get();
     }
 
+    /**
+     * Get the last trade of the day for specified instrument
+     *
+     * @param instrument - instrument
+     * @return latest {@link TradingEvent} of the day for specified instrument, the first one of equal times
+     */
+    public TradingEvent getLastTradeEvent(String instrument) {
+        return events.stream()
+                .filter(e -> e.getInstrument().equals(instrument))
+                .max(sortByTime).get();
+    }
+
     /**
      * Get mid market price for specified instrument
      *
@@ -98,31 +101,83 @@ public class TradingEvents {
      * Get a total amount (volume) of specified instrument traded
      *
      * @param instrument - instrument
-     * @return a {@link BigInteger} value
+     * @return a total quantity
      */
-    public BigInteger getVolume(String instrument) {
+    public long getVolume(String instrument) {
         return events.stream()
                 .filter(e -> e.getInstrument().equals(instrument))
-                .map(te -> BigInteger.valueOf(te.getQuantity()))
-                .reduce(BigInteger.ZERO, BigInteger::add);
+                .mapToLong(TradingEvent::getQuantity)
+                .sum();
     }
 
     /**
-     * Gets the result string for scv output for specified instrument.
-     * String consists of exchange name, date of tradings, instrument, close price, max price, min price and volume
+     * Get close/max/min prices and volume of specified instrument for the day. Close is the price of the last trade
+     *
+     * @param instrument - instrument
+     * @return {@link InstrumentStats} for the day
+     */
+    public InstrumentStats getInstrumentStats(String instrument) {
+        return aggregate(instrument).toStats(exchange, getDate(), instrument);
+    }
+
+    /**
+     * Writes the result row for csv output for specified instrument.
+     * Row consists of exchange name, date of tradings, instrument, close price, max price, min price and volume.
+     * All values are collected in a single pass over the events, close is the same as {@link #getCloseMarketEvent(String)}
      *
      * @param instrument
-     * @return a result {@link String} that is used to write info to output csv file
+     * @param formatter - a {@link ResultRowFormatter} the row is appended to (without line separator)
+     * @return {@link InstrumentStats} of the day, see {@link #getInstrumentStats(String)}
+     */
+    public InstrumentStats calculateResult(String instrument, ResultRowFormatter formatter) {
+        DayAggregate day = aggregate(instrument);
+        formatter.append(exchange).appendFieldSeparator()
+                .append(getDate()).appendFieldSeparator()
+                .append(instrument).appendFieldSeparator()
+                .appendHundredths(day.first.getPrice()).appendFieldSeparator()
+                .appendHundredths(day.maxPrice).appendFieldSeparator()
+                .appendHundredths(day.minPrice).appendFieldSeparator()
+                .appendLong(day.volume);
+        return day.toStats(exchange, getDate(), instrument);
+    }
+
+    /**
+     * Collects the first and the last trades, max/min prices and volume of specified instrument in one pass.
+     * Of equal times the earliest encountered event is kept, same as {@link #getCloseMarketEvent(String)}
+     * and {@link #getLastTradeEvent(String)} do
+     *
+     * @param instrument - traded instrument
+     * @return {@link DayAggregate} of the day
      */
-    public String calculateResult(String instrument) {
-        return String.format("%s, %s, %s, %.2f, %.2f, %.2f, %s",
-                exchange,
-                getDate(),
-                instrument,
-                getCloseMarketEvent(instrument).getPrice(),
-                getMaxPrice(instrument).getPrice(),
-                getMinPrice(instrument).getPrice(),
-                getVolume(instrument).toString());
+    private DayAggregate aggregate(String instrument) {
+        DayAggregate day = new DayAggregate();
+        for (TradingEvent e : events) {
+            if (!e.getInstrument().equals(instrument))
+                continue;
+            if (day.first == null || sortByTime.compare(e, day.first) < 0)
+                day.first = e;
+            if (day.last == null || sortByTime.compare(e, day.last) > 0)
+                day.last = e;
+            day.maxPrice = Math.max(day.maxPrice, e.getPrice());
+            day.minPrice = Math.min(day.minPrice, e.getPrice());
+            day.volume += e.getQuantity();
+        }
+        if (day.first == null)
+            throw new NoSuchElementException("No events of " + instrument + " in " + fileName);
+        return day;
+    }
+
+    /** Aggregated events of one instrument for the day */
+    private static class DayAggregate {
+        TradingEvent first;
+        TradingEvent last;
+        long maxPrice = Long.MIN_VALUE;
+        long minPrice = Long.MAX_VALUE;
+        long volume;
+
+        InstrumentStats toStats(String exchange, String date, String instrument) {
+            return new InstrumentStats(exchange, date, instrument, last.getPrice(), maxPrice, minPrice, volume);
+        }
     }
 
     /**
@@ -140,7 +195,9 @@ public class TradingEvents {
      *  Some setters and getters
      */
     private String getDate() {
-        return Support.getDateFromFileName(fileName);
+        if (date == null)
+            date = Support.getDateFromFileName(fileName);
+        return date;
     }
     public List<TradingEvent> getEvents() {
         return events;
@@ -153,6 +210,7 @@ public class TradingEvents {
     }
     public void setFileName(String fileName) {
         this.fileName = fileName;
+        this.date = null;
     }
     public String getFileName() {
         return fileName;
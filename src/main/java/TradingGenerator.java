@@ -1,4 +1,3 @@
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.vavr.control.Try;
 
 import java.io.BufferedWriter;
@@ -8,7 +7,6 @@ import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.*;
@@ -19,35 +17,31 @@ import java.util.stream.IntStream;
  * Created by Maksim Nikelman on 26.11.17.
  */
 public class TradingGenerator {
-    private static ExecutorService executor;
-    static {
-        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
-                .setNameFormat("GenerateTradingEvent-%d")
-                .setDaemon(true)
-                .build();
-        executor = Executors.newFixedThreadPool(10, threadFactory);
-    }
 
     /**
-     * Generate input data
+     * Generate input data. Every generated file gets its {@link InstrumentIndex}.
+     * Jobs with a seed generate the same files every time
+     *
+     * @param job - job to generate input files for. Files are written into its input directory
      */
-    public static List<String> generate(){
-        LocalDate start = LocalDate.parse(Support.getStartDate(), Support.DATE_FORMAT);
-        LocalDate end = LocalDate.parse(Support.getEndDate(), Support.DATE_FORMAT);
+    public static List<String> generate(TradingJob job){
+        LocalDate start = job.getStartDate();
+        LocalDate end = job.getEndDate();
         List<Callable<String>> generators = new ArrayList<>();
+        Random random = job.newRandom(1);
         while (!start.isAfter(end)) {
             String date = start.format(Support.DATE_FORMAT);
             for (String market : Support.MARKETS) {
-                int subFiles = new Random().nextInt(Support.getMaxSubFilesQuantifier()) + 1;
+                int subFiles = random.nextInt(job.getMaxSubFilesQuantifier()) + 1;
                 if (subFiles == 1) {
-                    generators.add(new Generator(market, date, 0));
+                    generators.add(new Generator(job, market, date, 0));
                 } else {
-                    IntStream.range(1, subFiles + 1).forEach(i -> generators.add(new Generator(market, date, i)));
+                    IntStream.range(1, subFiles + 1).forEach(i -> generators.add(new Generator(job, market, date, i)));
                 }
             }
             start = start.plusDays(1);
         }
-        List<Future<String>> generatorsFutures = Try.of(() -> executor.invokeAll(generators)).get();
+        List<Future<String>> generatorsFutures = Try.of(() -> job.getExecutor().invokeAll(generators)).get();
         return generatorsFutures
                 .stream()
                 .filter(Future::isDone)
@@ -61,19 +55,28 @@ public class TradingGenerator {
      * Used to run in parallel threads
      */
     private static class Generator implements Callable<String> {
-        private static int operationsFrequency;
-        private static int incrementInterval;
+        private static final int LINE_SEPARATOR_LENGTH = System.lineSeparator().length();
+        private final int operationsFrequency;
+        private final int incrementInterval;
+        private final int indexBlockSize;
+        private final Random random;
         String fileName;
-        double[] inPrices = Arrays.copyOf(Support.getInitialPrices(), Support.getInitialPrices().length);
+        String[] instruments;
+        double[] inPrices;
         LocalTime genTime;
         LocalTime closeTime;
 
-        public Generator(String market, String date, int subFile) {
-            fileName = Support.getInputDir() + market + "-" + date +(subFile == 0 ? "" : "-" + subFile) + ".csv";
+        public Generator(TradingJob job, String market, String date, int subFile) {
+            String name = market + "-" + date +(subFile == 0 ? "" : "-" + subFile) + ".csv";
+            fileName = new File(job.getInputDir(), name).getPath();
+            random = job.newRandom(name.hashCode());
+            instruments = job.getInstruments();
+            inPrices = job.getInitialPrices();
             genTime = LocalTime.parse(Support.MARKET_OPEN_TIME, Support.TIME_FORMAT);
             closeTime = LocalTime.parse(Support.MARKET_CLOSE_TIME, Support.TIME_FORMAT);
-            operationsFrequency = Support.getGeneratorOperationsFrequency();
-            incrementInterval = Support.getGeneratorOperationsIncrementInterval();
+            operationsFrequency = job.getGeneratorOperationsFrequency();
+            incrementInterval = job.getGeneratorOperationsIncrementInterval();
+            indexBlockSize = job.getIndexBlockSize();
         }
 
         @Override
@@ -81,26 +84,30 @@ public class TradingGenerator {
             String result = "";
             long l = System.currentTimeMillis();
             File file = new File(fileName);int linesCounter = 0;
+            InstrumentIndex.Builder indexBuilder = new InstrumentIndex.Builder(indexBlockSize);
+            long offset = 0;
             try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
 
                 while (genTime.isBefore(closeTime)) {
-                    int rand = new Random().nextInt(Support.getInstruments().length);
+                    int rand = random.nextInt(instruments.length);
                     /** Could use TradingEvent object there.
                     TradingEvent event = new TradingEvent();
-                    event.setInstrument(Support.getInstruments()[rand]);
-                    event.setTime(genTime.plusMinutes(new Random().nextInt(10)).withSecond(new Random().nextInt(60)).format(Support.TIME_FORMAT));
-                    event.setPrice(inPrices[rand] * 0.95 + (new Random().nextDouble()) * inPrices[rand] * 0.1);
-                    event.setQuantity(new Random().nextInt(30) * 100);
+                    event.setInstrument(instruments[rand]);
+                    event.setTime(genTime.plusMinutes(random.nextInt(10)).withSecond(random.nextInt(60)).format(Support.TIME_FORMAT));
+                    event.setPrice(inPrices[rand] * 0.95 + (random.nextDouble()) * inPrices[rand] * 0.1);
+                    event.setQuantity(random.nextInt(30) * 100);
                     bw.write(event.toString());
                      */
-                    double randPrice = inPrices[rand] * 0.95 + (new Random().nextDouble()) * inPrices[rand] * 0.1;
+                    double randPrice = inPrices[rand] * 0.95 + (random.nextDouble()) * inPrices[rand] * 0.1;
                     String resultString = String.format("%s, %s, %.2f, %d",
-                            Support.getInstruments()[rand],
-                            genTime.plusMinutes(new Random().nextInt(10)).withSecond(new Random().nextInt(60)).format(Support.TIME_FORMAT),
+                            instruments[rand],
+                            genTime.plusMinutes(random.nextInt(10)).withSecond(random.nextInt(60)).format(Support.TIME_FORMAT),
                             randPrice,
-                            new Random().nextInt(30) * 100);
+                            random.nextInt(30) * 100);
+                    indexBuilder.addLine(instruments[rand], offset);
                     bw.write(resultString);
                     bw.newLine();
+                    offset += resultString.length() + LINE_SEPARATOR_LENGTH; // generated lines are ascii
                     linesCounter++;
                     if (linesCounter % operationsFrequency == 0)
                         genTime = genTime.plusMinutes(incrementInterval);
@@ -109,6 +116,7 @@ public class TradingGenerator {
             } catch (IOException e) {
                 return Support.FILE_GENERATION_ERROR + Thread.currentThread().getName() + "\n"+e.getMessage() ;
             }
+            indexBuilder.build(file.length(), file.lastModified()).write(file);
             return "File " + fileName + "successfully generated in "+(System.currentTimeMillis() - l) + " ms. "+linesCounter + " lines generated.";
         }
     }
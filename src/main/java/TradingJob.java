@@ -0,0 +1,334 @@
+import io.vavr.control.Try;
+import org.junit.Assert;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Immutable configuration of a single report job: input and output paths, dates, generator and reader settings.
+ * It is passed through generator, parser and aggregation instead of static fields,
+ * so several jobs over different ranges and directories could run at the same time in one JVM.
+ * Unless specified, jobs share {@link TradingWorkerPool#shared()} with fair scheduling between them.
+ */
+public class TradingJob {
+    private final String inputDir;
+    private final String outputPath;
+    private final String rankingOutputPath;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final String[] instruments;
+    private final double[] initialPrices;
+    private final int maxSubFilesQuantifier;
+    private final int generatorOperationsFrequency;
+    private final int generatorOperationsIncrementInterval;
+    private final int readAheadBlockSize;
+    private final int readsInFlightPerFile;
+    private final int maxReadsInFlight;
+    private final int rankingSize;
+    private final Set<String> instrumentFilter;
+    private final int indexBlockSize;
+    private final Long seed;
+    private final ExecutorService executor;
+
+    private TradingJob(Builder builder) {
+        Assert.assertFalse("Input directory not specified", builder.inputDir == null || builder.inputDir.isEmpty());
+        Assert.assertFalse("Output path not specified", builder.outputPath == null || builder.outputPath.isEmpty());
+        this.inputDir = builder.inputDir;
+        this.outputPath = builder.outputPath;
+        this.rankingOutputPath = builder.rankingOutputPath;
+        this.startDate = parseDate("Start", builder.startDate);
+        this.endDate = parseDate("End", builder.endDate);
+        this.seed = builder.seed;
+        if (builder.instruments == null) {
+            Random random = newRandom(0);
+            this.instruments = Support.generateInstruments(builder.instrumentsQuantity, random);
+            this.initialPrices = Support.generateInitialPrices(builder.instrumentsQuantity, random);
+        } else {
+            Assert.assertEquals("Instruments and initial prices don't match", builder.instruments.length, builder.initialPrices.length);
+            this.instruments = builder.instruments.clone();
+            this.initialPrices = builder.initialPrices.clone();
+        }
+        this.maxSubFilesQuantifier = builder.maxSubFilesQuantifier;
+        this.generatorOperationsFrequency = builder.generatorOperationsFrequency;
+        this.generatorOperationsIncrementInterval = builder.generatorOperationsIncrementInterval;
+        this.readAheadBlockSize = builder.readAheadBlockSize;
+        this.readsInFlightPerFile = builder.readsInFlightPerFile;
+        this.maxReadsInFlight = builder.maxReadsInFlight;
+        this.rankingSize = builder.rankingSize;
+        this.instrumentFilter = Collections.unmodifiableSet(new TreeSet<>(builder.instrumentFilter));
+        this.indexBlockSize = builder.indexBlockSize;
+        this.executor = builder.executor != null ? builder.executor : TradingWorkerPool.shared().newJobExecutor();
+    }
+
+    private static LocalDate parseDate(String name, String date) {
+        Assert.assertFalse(name + " date not specified", date == null || date.isEmpty());
+        return Try.of(() -> LocalDate.parse(date, Support.DATE_FORMAT))
+                .getOrElseThrow(() -> new AutotestException("Couldn't parse " + name.toLowerCase() + " date " + date));
+    }
+
+    /**
+     * Get a source of randomness for generating data. Seeded jobs give the same sequence for the same salt,
+     * so that generated datasets could be reproduced even though files are generated in parallel
+     *
+     * @param salt - distinguishes independent sequences of one job, for example generated files
+     * @return {@link Random}
+     */
+    public Random newRandom(long salt) {
+        return seed == null ? new Random() : new Random(seed * 31 + salt);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get a builder prepopulated with this job's settings, including generated instruments and executor
+     *
+     * @return {@link Builder}
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .setInputDir(inputDir)
+                .setOutputPath(outputPath)
+                .setRankingOutputPath(rankingOutputPath)
+                .setStartDate(startDate.format(Support.DATE_FORMAT))
+                .setEndDate(endDate.format(Support.DATE_FORMAT))
+                .setInstruments(instruments, initialPrices)
+                .setMaxSubFilesQuantifier(maxSubFilesQuantifier)
+                .setGeneratorOperationsFrequency(generatorOperationsFrequency)
+                .setGeneratorOperationsIncrementInterval(generatorOperationsIncrementInterval)
+                .setReadAheadBlockSize(readAheadBlockSize)
+                .setReadsInFlightPerFile(readsInFlightPerFile)
+                .setMaxReadsInFlight(maxReadsInFlight)
+                .setRankingSize(rankingSize)
+                .setInstrumentFilter(instrumentFilter)
+                .setIndexBlockSize(indexBlockSize)
+                .setSeed(seed)
+                .setExecutor(executor);
+    }
+
+    /**
+     * Checks input directory existence and creates it if needed
+     *
+     * @return {@link Boolean} result
+     */
+    public boolean checkInputDirectory() {
+        File iDir = new File(inputDir);
+        if (!iDir.exists())
+            return iDir.mkdirs();
+        return true;
+    }
+
+    /**
+     * Checks output path directory existence and creates it if needed
+     *
+     * @return {@link Boolean} result
+     */
+    public boolean checkOutputDirectory() {
+        File oDir = new File(outputPath).getAbsoluteFile().getParentFile();
+        if (!oDir.exists())
+            return oDir.mkdirs();
+        return true;
+    }
+
+    /**
+     * Get path of the ranking report. Unless specified, it is placed next to the output file: output.csv -> output-ranking.csv
+     *
+     * @return ranking report path
+     */
+    public String getRankingOutputPath() {
+        if (rankingOutputPath != null)
+            return rankingOutputPath;
+        String path = outputPath;
+        if (path.endsWith(".csv"))
+            path = path.substring(0, path.length() - ".csv".length());
+        return path + "-ranking.csv";
+    }
+
+    /**
+     * Some getters
+     */
+    public String getInputDir() {
+        return inputDir;
+    }
+    public String getOutputPath() {
+        return outputPath;
+    }
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+    public String[] getInstruments() {
+        return instruments.clone();
+    }
+    public double[] getInitialPrices() {
+        return initialPrices.clone();
+    }
+    public int getMaxSubFilesQuantifier() {
+        return maxSubFilesQuantifier;
+    }
+    public int getGeneratorOperationsFrequency() {
+        return generatorOperationsFrequency;
+    }
+    public int getGeneratorOperationsIncrementInterval() {
+        return generatorOperationsIncrementInterval;
+    }
+    public int getReadAheadBlockSize() {
+        return readAheadBlockSize;
+    }
+    public int getReadsInFlightPerFile() {
+        return readsInFlightPerFile;
+    }
+    public int getMaxReadsInFlight() {
+        return maxReadsInFlight;
+    }
+    public int getRankingSize() {
+        return rankingSize;
+    }
+    /**
+     * Get instruments the report is limited to
+     *
+     * @return a {@link Set} of instruments, empty if the report covers all instruments
+     */
+    public Set<String> getInstrumentFilter() {
+        return instrumentFilter;
+    }
+    public int getIndexBlockSize() {
+        return indexBlockSize;
+    }
+    public Long getSeed() {
+        return seed;
+    }
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Builder of {@link TradingJob}. Input directory, output path and dates are required, the rest have defaults
+     */
+    public static class Builder {
+        private String inputDir;
+        private String outputPath;
+        private String rankingOutputPath;
+        private String startDate;
+        private String endDate;
+        private int instrumentsQuantity = 10; // Quantity of instruments available for trading
+        private String[] instruments;
+        private double[] initialPrices;
+        private int maxSubFilesQuantifier = 2; // Specifies maximum quantity of files that can be generated for each exchange per day;
+        private int generatorOperationsFrequency = 2; // used to set how many operations will be generated per 'generatorOperationsIncrementInterval' minutes.
+        private int generatorOperationsIncrementInterval = 10;
+        private int readAheadBlockSize = 1 << 20; // Size of a single asynchronous read of an input file, bytes
+        private int readsInFlightPerFile = 4; // How many reads of one input file could be in flight at the same time
+        private int maxReadsInFlight = 16; // How many reads could be in flight across all input files of the job. Tune to the storage
+        private int rankingSize = 50; // How many instruments are kept in each ranking of the ranking report
+        private Collection<String> instrumentFilter = Collections.emptySet();
+        private int indexBlockSize = 64 * 1024; // Approximate size of a block of lines in instrument index of an input file, bytes
+        private Long seed; // Seed of generated data. Random data every time if not specified
+        private ExecutorService executor;
+
+        private Builder() {
+        }
+
+        public Builder setInputDir(String inputDir) {
+            this.inputDir = inputDir;
+            return this;
+        }
+        public Builder setOutputPath(String outputPath) {
+            this.outputPath = outputPath;
+            return this;
+        }
+        public Builder setRankingOutputPath(String rankingOutputPath) {
+            this.rankingOutputPath = rankingOutputPath;
+            return this;
+        }
+        public Builder setStartDate(String startDate) {
+            this.startDate = startDate;
+            return this;
+        }
+        public Builder setEndDate(String endDate) {
+            this.endDate = endDate;
+            return this;
+        }
+        /**
+         * Set quantity of random instruments generated for the job. Ignored if instruments are set explicitly
+         */
+        public Builder setInstrumentsQuantity(int instrumentsQuantity) {
+            this.instrumentsQuantity = instrumentsQuantity;
+            return this;
+        }
+        /**
+         * Set instruments and their initial prices used for generating trading data
+         */
+        public Builder setInstruments(String[] instruments, double[] initialPrices) {
+            this.instruments = instruments;
+            this.initialPrices = initialPrices;
+            return this;
+        }
+        public Builder setMaxSubFilesQuantifier(int maxSubFilesQuantifier) {
+            this.maxSubFilesQuantifier = maxSubFilesQuantifier;
+            return this;
+        }
+        public Builder setGeneratorOperationsFrequency(int generatorOperationsFrequency) {
+            this.generatorOperationsFrequency = generatorOperationsFrequency;
+            return this;
+        }
+        public Builder setGeneratorOperationsIncrementInterval(int generatorOperationsIncrementInterval) {
+            this.generatorOperationsIncrementInterval = generatorOperationsIncrementInterval;
+            return this;
+        }
+        public Builder setReadAheadBlockSize(int readAheadBlockSize) {
+            this.readAheadBlockSize = readAheadBlockSize;
+            return this;
+        }
+        public Builder setReadsInFlightPerFile(int readsInFlightPerFile) {
+            this.readsInFlightPerFile = readsInFlightPerFile;
+            return this;
+        }
+        public Builder setMaxReadsInFlight(int maxReadsInFlight) {
+            this.maxReadsInFlight = maxReadsInFlight;
+            return this;
+        }
+        public Builder setRankingSize(int rankingSize) {
+            this.rankingSize = rankingSize;
+            return this;
+        }
+        /**
+         * Limit the report to specified instruments. Empty collection means all instruments
+         */
+        public Builder setInstrumentFilter(Collection<String> instrumentFilter) {
+            this.instrumentFilter = instrumentFilter;
+            return this;
+        }
+        public Builder setIndexBlockSize(int indexBlockSize) {
+            this.indexBlockSize = indexBlockSize;
+            return this;
+        }
+        /**
+         * Set seed to generate the same instruments and input files every time. Null for random data
+         */
+        public Builder setSeed(Long seed) {
+            this.seed = seed;
+            return this;
+        }
+        /**
+         * Set executor for the job's tasks. By default the job gets its own queue in {@link TradingWorkerPool#shared()}
+         */
+        public Builder setExecutor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public TradingJob build() {
+            return new TradingJob(this);
+        }
+    }
+}
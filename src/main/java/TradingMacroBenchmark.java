@@ -0,0 +1,417 @@
+import org.junit.Assert;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * End-to-end benchmark of the whole {@link DeutscheBankTradingTest} flow on seeded datasets of several scales.
+ * <p>
+ * For every scale the generate, parse, calculate and write stages are run a few times for warm-up and then measured.
+ * Input files of a scale (&lt;work dir&gt;/&lt;scale&gt;/input) are deleted first, so the dataset depends on the seed only.
+ * Each stage reports wall time, throughput, peak RSS, peak heap (used heap sampled every few milliseconds) and GC time.
+ * Results are written into a csv report, which could be compared with a report of a previous run: stages that got
+ * slower or hungrier than the threshold are reported as regressions and the benchmark exits with code 1.
+ * To keep run-to-run noise out, a metric regresses only if it also grew by more than a minimum absolute delta,
+ * and wall time only if it grew by more than the spread (max - min) of measured iterations.
+ * <p>
+ * Usage: {@code TradingMacroBenchmark <work dir> <scale[,scale...]> [--iterations N] [--warmup N] [--seed N]
+ * [--report file] [--baseline file] [--threshold 0.10] [--min-delta-ms 50] [--min-delta-mb 32]},
+ * scales are small, 1gb and 10gb.
+ * Large scales need a heap big enough to hold all parsed events.
+ */
+public class TradingMacroBenchmark {
+    private static final String REPORT_HEADER = "scale, stage, iterations, wall_ms_min, wall_ms_median, wall_ms_mean, wall_ms_max, "
+            + "mb_per_s, events_per_s, peak_rss_mb, peak_heap_mb, gc_ms";
+    private static final LocalDate START_DATE = LocalDate.of(2017, 11, 1);
+    /** Metrics that are compared with baseline. For all of them less is better */
+    private static final String[] COMPARED_MS_METRICS = {"wall_ms_median", "gc_ms"};
+    private static final String[] COMPARED_MB_METRICS = {"peak_rss_mb", "peak_heap_mb"};
+
+    /**
+     * Dataset scales. Roughly 45 bytes per line, 1 minute generator interval over 510 trading minutes
+     * and 1.5 files per exchange and day on average
+     */
+    public enum Scale {
+        SMALL("small", 3, 50),
+        GB_1("1gb", 10, 1000),
+        GB_10("10gb", 100, 1000);
+
+        private final String name;
+        private final int days;
+        private final int operationsFrequency;
+
+        Scale(String name, int days, int operationsFrequency) {
+            this.name = name;
+            this.days = days;
+            this.operationsFrequency = operationsFrequency;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Scale byName(String name) {
+            return Arrays.stream(values()).filter(s -> s.getName().equalsIgnoreCase(name)).findFirst()
+                    .orElseThrow(() -> new AutotestException("Unknown scale " + name));
+        }
+    }
+
+    /**
+     * Benchmark stages, in order of the flow
+     */
+    public enum Stage {
+        GENERATE, PARSE, CALCULATE, WRITE;
+
+        public String getName() {
+            return name().toLowerCase();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Assert.assertTrue("Usage: TradingMacroBenchmark <work dir> <scale[,scale...]> [--iterations N] [--warmup N] [--seed N] "
+                + "[--report file] [--baseline file] [--threshold 0.10] [--min-delta-ms 50] [--min-delta-mb 32]",
+                args.length >= 2 && args.length % 2 == 0);
+        File workDir = new File(args[0]);
+        List<Scale> scales = new ArrayList<>();
+        for (String scale : args[1].split(","))
+            scales.add(Scale.byName(scale.trim()));
+        Map<String, String> options = new HashMap<>();
+        for (int i = 2; i < args.length; i += 2)
+            options.put(args[i], args[i + 1]);
+        int iterations = Integer.parseInt(options.getOrDefault("--iterations", "5"));
+        int warmup = Integer.parseInt(options.getOrDefault("--warmup", "2"));
+        long seed = Long.parseLong(options.getOrDefault("--seed", "20171126"));
+        File report = new File(options.getOrDefault("--report", new File(workDir, "macro-benchmark.csv").getPath()));
+        double threshold = Double.parseDouble(options.getOrDefault("--threshold", "0.10"));
+        double minDeltaMs = Double.parseDouble(options.getOrDefault("--min-delta-ms", "50"));
+        double minDeltaMb = Double.parseDouble(options.getOrDefault("--min-delta-mb", "32"));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(REPORT_HEADER).append(System.lineSeparator());
+        for (Scale scale : scales) {
+            Map<Stage, List<Sample>> samples = run(workDir, scale, seed, warmup, iterations);
+            for (Stage stage : Stage.values())
+                writeReportRow(sb, scale, stage, samples.get(stage));
+        }
+        Files.createDirectories(report.getAbsoluteFile().getParentFile().toPath());
+        Files.write(report.toPath(), sb.toString().getBytes(Charset.defaultCharset()));
+        System.out.print(sb);
+        System.out.println("Report is written into " + report);
+
+        if (options.containsKey("--baseline")) {
+            List<String> regressions = compare(readReport(new File(options.get("--baseline"))), readReport(report),
+                    threshold, minDeltaMs, minDeltaMb);
+            regressions.forEach(System.out::println);
+            if (!regressions.isEmpty())
+                System.exit(1);
+            System.out.println("No regressions above " + Math.round(threshold * 100) + "% compared to " + options.get("--baseline"));
+        }
+    }
+
+    /**
+     * Runs all stages of one scale
+     *
+     * @return measured samples of every stage, warm-up iterations excluded
+     */
+    private static Map<Stage, List<Sample>> run(File workDir, Scale scale, long seed, int warmup, int iterations) {
+        File scaleDir = new File(workDir, scale.getName());
+        // files of a previous run with another seed would be parsed too, so the dataset is generated from scratch
+        deleteInputFiles(new File(scaleDir, "input"));
+        TradingJob job = TradingJob.builder()
+                .setInputDir(new File(scaleDir, "input").getPath())
+                .setOutputPath(new File(scaleDir, "output" + File.separator + "output.csv").getPath())
+                .setStartDate(START_DATE.format(Support.DATE_FORMAT))
+                .setEndDate(START_DATE.plusDays(scale.days - 1).format(Support.DATE_FORMAT))
+                .setInstrumentsQuantity(100)
+                .setGeneratorOperationsFrequency(scale.operationsFrequency)
+                .setGeneratorOperationsIncrementInterval(1)
+                .setSeed(seed)
+                .build();
+        Assert.assertTrue(job.checkInputDirectory());
+        Assert.assertTrue(job.checkOutputDirectory());
+
+        Map<Stage, List<Sample>> samples = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values())
+            samples.put(stage, new ArrayList<>());
+        for (int i = 0; i < warmup + iterations; i++) {
+            boolean measured = i >= warmup;
+            List<String> generated = measure(Stage.GENERATE, samples, measured, () -> TradingGenerator.generate(job));
+            generated.stream().filter(g -> g.startsWith(Support.FILE_GENERATION_ERROR)).findFirst().ifPresent(error -> {
+                throw new AutotestException(error);
+            });
+            List<TradingEvents> allEvents = measure(Stage.PARSE, samples, measured, () -> TradingParser.parseCsvData(job));
+            // count before calculation, it merges events of sub-files into the first file of the day
+            long events = allEvents.stream().mapToLong(e -> e.getEvents().size()).sum();
+            TradingRankings rankings = new TradingRankings(job.getRankingSize());
+            byte[] result = measure(Stage.CALCULATE, samples, measured, () -> TradingParser.calculateResultBytes(job, allEvents, rankings));
+            measure(Stage.WRITE, samples, measured, () -> {
+                TradingParser.writeResult(job, result);
+                TradingParser.writeRankings(job, rankings);
+                return null;
+            });
+            // all stages process the same dataset, so throughput of every stage is measured in input bytes and events
+            long bytes = Arrays.stream(TradingParser.collectInputFiles(job)).mapToLong(File::length).sum();
+            if (measured) {
+                for (List<Sample> stageSamples : samples.values()) {
+                    Sample sample = stageSamples.get(stageSamples.size() - 1);
+                    sample.bytes = bytes;
+                    sample.events = events;
+                }
+            }
+            System.out.println("Scale " + scale.getName() + (measured ? " iteration " + (i - warmup + 1) : " warm-up " + (i + 1))
+                    + ": " + (bytes >> 20) + " MB, " + events + " events");
+        }
+        return samples;
+    }
+
+    /**
+     * Deletes generated csv files and their sidecar indexes left by a previous run
+     *
+     * @param inputDir - input directory of a scale
+     */
+    private static void deleteInputFiles(File inputDir) {
+        File[] files = inputDir.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            if (file.isFile())
+                Assert.assertTrue("Could not delete " + file, file.delete());
+        }
+    }
+
+    /**
+     * Runs one stage and records its sample
+     *
+     * @param measured - false for warm-up iterations, they are not recorded
+     * @return result of the stage
+     */
+    private static <T> T measure(Stage stage, Map<Stage, List<Sample>> samples, boolean measured, Supplier<T> action) {
+        System.gc();
+        resetPeakRss();
+        long gcMillis = gcMillis();
+        HeapSampler heapSampler = new HeapSampler();
+        heapSampler.start();
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = action.get();
+        } finally {
+            heapSampler.finish();
+        }
+        Sample sample = new Sample();
+        sample.wallNanos = System.nanoTime() - start;
+        sample.gcMillis = gcMillis() - gcMillis;
+        sample.peakHeapBytes = heapSampler.peakBytes;
+        sample.peakRssBytes = peakRss();
+        if (measured)
+            samples.get(stage).add(sample);
+        return result;
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(t -> t > 0)
+                .sum();
+    }
+
+    /**
+     * Resets peak RSS of the process (Linux only), so that it is measured per stage
+     */
+    private static void resetPeakRss() {
+        try (Writer writer = new FileWriter("/proc/self/clear_refs")) {
+            writer.write("5");
+        } catch (IOException e) {
+            // not supported, peak RSS will cover the whole run
+        }
+    }
+
+    /**
+     * @return peak RSS of the process in bytes or -1 if it is unknown (not Linux)
+     */
+    private static long peakRss() {
+        try (BufferedReader br = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("VmHWM:"))
+                    return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim()) * 1024;
+            }
+        } catch (IOException | NumberFormatException e) {
+            // not supported
+        }
+        return -1;
+    }
+
+    /**
+     * Writes one report row. Times are in milliseconds, sizes in megabytes, all with two decimals
+     */
+    private static void writeReportRow(StringBuilder sb, Scale scale, Stage stage, List<Sample> samples) {
+        long[] wall = samples.stream().mapToLong(s -> s.wallNanos).sorted().toArray();
+        double median = median(wall);
+        double medianSeconds = median / 1e9;
+        long bytes = samples.isEmpty() ? 0 : samples.get(0).bytes;
+        long events = samples.isEmpty() ? 0 : samples.get(0).events;
+        sb.append(scale.getName()).append(", ")
+                .append(stage.getName()).append(", ")
+                .append(samples.size()).append(", ")
+                .append(decimal(wall.length == 0 ? 0 : wall[0] / 1e6)).append(", ")
+                .append(decimal(median / 1e6)).append(", ")
+                .append(decimal(Arrays.stream(wall).average().orElse(0) / 1e6)).append(", ")
+                .append(decimal(wall.length == 0 ? 0 : wall[wall.length - 1] / 1e6)).append(", ")
+                .append(decimal(median == 0 ? 0 : bytes / 1048576.0 / medianSeconds)).append(", ")
+                .append(decimal(median == 0 ? 0 : events / medianSeconds)).append(", ")
+                .append(decimal(megabytes(samples.stream().mapToLong(s -> s.peakRssBytes).max().orElse(-1)))).append(", ")
+                .append(decimal(megabytes(samples.stream().mapToLong(s -> s.peakHeapBytes).max().orElse(-1)))).append(", ")
+                .append(decimal(samples.stream().mapToLong(s -> s.gcMillis).average().orElse(0)))
+                .append(System.lineSeparator());
+    }
+
+    /**
+     * @param sorted - sorted values
+     * @return median, the mean of two middle values for even count
+     */
+    private static double median(long[] sorted) {
+        if (sorted.length == 0)
+            return 0;
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes < 0 ? -1 : bytes / 1048576.0;
+    }
+
+    private static String decimal(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /**
+     * Reads a report written by the benchmark
+     *
+     * @param report - report file
+     * @return metric values by "scale, stage" and metric name
+     */
+    static Map<String, Map<String, Double>> readReport(File report) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(report.getPath()), Charset.defaultCharset());
+        Assert.assertFalse("Empty benchmark report " + report, lines.isEmpty());
+        String[] header = lines.get(0).split(",");
+        Map<String, Map<String, Double>> result = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.trim().isEmpty())
+                continue;
+            String[] data = line.split(",");
+            Map<String, Double> metrics = new LinkedHashMap<>();
+            for (int i = 2; i < data.length && i < header.length; i++)
+                metrics.put(header[i].trim(), Double.parseDouble(data[i].trim()));
+            result.put(data[0].trim() + ", " + data[1].trim(), metrics);
+        }
+        return result;
+    }
+
+    /**
+     * Compares two reports. A metric regresses if it grew by more than the threshold and by more than the minimum
+     * absolute delta of its unit. Wall time should also grow by more than the spread (max - min) of either run
+     *
+     * @param baseline - baseline report, see {@link #readReport(File)}
+     * @param current - current report
+     * @param threshold - relative growth of a metric that is reported, for example 0.1 for 10%
+     * @param minDeltaMs - minimum growth of time metrics, milliseconds
+     * @param minDeltaMb - minimum growth of memory metrics, megabytes
+     * @return descriptions of regressions
+     */
+    static List<String> compare(Map<String, Map<String, Double>> baseline, Map<String, Map<String, Double>> current,
+                                double threshold, double minDeltaMs, double minDeltaMb) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Double>> entry : current.entrySet()) {
+            Map<String, Double> was = baseline.get(entry.getKey());
+            if (was == null)
+                continue;
+            Map<String, Double> now = entry.getValue();
+            double spread = Math.max(spread(was), spread(now));
+            for (String metric : COMPARED_MS_METRICS)
+                checkRegression(regressions, entry.getKey(), metric, was.get(metric), now.get(metric), threshold,
+                        metric.startsWith("wall_ms") ? Math.max(minDeltaMs, spread) : minDeltaMs);
+            for (String metric : COMPARED_MB_METRICS)
+                checkRegression(regressions, entry.getKey(), metric, was.get(metric), now.get(metric), threshold, minDeltaMb);
+        }
+        return regressions;
+    }
+
+    private static double spread(Map<String, Double> metrics) {
+        Double min = metrics.get("wall_ms_min");
+        Double max = metrics.get("wall_ms_max");
+        return min == null || max == null ? 0 : max - min;
+    }
+
+    private static void checkRegression(List<String> regressions, String key, String metric, Double was, Double now,
+                                        double threshold, double minDelta) {
+        if (was == null || now == null || was <= 0 || now < 0)
+            return;
+        if (now > was * (1 + threshold) && now - was > minDelta)
+            regressions.add("REGRESSION " + key + " " + metric + ": " + decimal(was) + " -> " + decimal(now)
+                    + " (+" + Math.round((now - was) * 100 / was) + "%)");
+    }
+
+    /**
+     * Samples used heap while a stage runs and keeps the maximum. Heap pools reach their peaks at different moments,
+     * so a sum of pool peaks could exceed the heap that was ever used
+     */
+    private static class HeapSampler extends Thread {
+        private static final long INTERVAL_MILLIS = 5;
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private volatile boolean running = true;
+        private volatile long peakBytes;
+
+        HeapSampler() {
+            super("heap-sampler");
+            setDaemon(true);
+            peakBytes = memory.getHeapMemoryUsage().getUsed();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                peakBytes = Math.max(peakBytes, memory.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stops sampling and takes the last sample
+         */
+        void finish() {
+            running = false;
+            interrupt();
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            peakBytes = Math.max(peakBytes, memory.getHeapMemoryUsage().getUsed());
+        }
+    }
+
+    /**
+     * Measurements of one stage run
+     */
+    private static class Sample {
+        long wallNanos;
+        long gcMillis;
+        long peakHeapBytes;
+        long peakRssBytes;
+        long bytes;
+        long events;
+    }
+}
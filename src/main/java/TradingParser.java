@@ -1,12 +1,15 @@
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.vavr.control.Try;
 import org.junit.Assert;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
@@ -14,65 +17,73 @@ import java.util.stream.Collectors;
  * Created by Maksim Nikelman on 26.11.17.
  */
 public class TradingParser {
+
     /**
-     * Could probably move this executor service to support.
-     * Decided to leave it right there for the time being as {@link TradingGenerator} uses different namings for its threads
+     * Get a {@link FilenameFilter} filter to filter files by date. Also ignores incorrect pattern names and sidecar indexes
+     *
+     * @param job - job with start and end dates
+     * @return filter
      */
-    private static ExecutorService executor;
-    static {
-        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
-                .setNameFormat("ParseTradingEvent-%d")
-                .setDaemon(true)
-                .build();
-        executor = Executors.newFixedThreadPool(10, threadFactory);
+    static FilenameFilter filesFilterByDate(TradingJob job) {
+        return (dir, name) -> {
+            if (!name.endsWith(".csv"))
+                return false;
+            String date = Support.getDateFromFileName(name);
+            if (date.isEmpty())
+                return false;
+            LocalDate fileDate = LocalDate.parse(date, Support.DATE_FORMAT);
+            return !fileDate.isBefore(job.getStartDate()) && !fileDate.isAfter(job.getEndDate());
+        };
     }
 
-    /** A {@link FilenameFilter} filter to filter files by date. Also ignores incorrect pattern names*/
-    static FilenameFilter filesFilterByDate = (dir, name) -> {
-        String date = Support.getDateFromFileName(name);
-        if (date.isEmpty())
-            return false;
-        LocalDate fileDate = LocalDate.parse(date, Support.DATE_FORMAT);
-        return !fileDate.isBefore(Support.getStartDateLD()) && !fileDate.isAfter(Support.getEndDateLD());
-    };
-
     /**
      * Collect all files from specified directory and apply filter for file names
      * A date in fileName should be between start and end dates
      *
+     * @param job - job to collect input files for
      * @return an array of collected files
      */
-    public static File[] collectInputFiles() {
-        File file = new File(Support.getInputDir());
-        File[] files = file.listFiles(filesFilterByDate);
-        Assert.assertFalse("There are no files in specified directory "+Support.getInputDir(), files == null);
+    public static File[] collectInputFiles(TradingJob job) {
+        File file = new File(job.getInputDir());
+        File[] files = file.listFiles(filesFilterByDate(job));
+        Assert.assertFalse("There are no files in specified directory "+job.getInputDir(), files == null);
         return files;
     }
 
     /**
-     * Parse all csv files in specified directories, filtered by start date and end date
+     * Parse all csv files in specified directories, filtered by start date and end date.
+     * If the job is filtered by instruments, files without requested instruments are left out of the result
      *
+     * @param job - job to parse input files for
      * @return list of all {@link TradingEvents} objects
      */
-    public static List<TradingEvents> parseCsvData() {
-        File[] files = collectInputFiles();
-        List<Callable<TradingEvents>> parsers = Arrays.stream(files).map(TradingFileParser::new).collect(Collectors.toList());
-        List<Future<TradingEvents>> futures = Try.of(() -> executor.invokeAll(parsers)).get();
-        return futures.parallelStream().filter(Future::isDone).map(f -> Try.of(() -> f.get(1, TimeUnit.MINUTES)).get()).collect(Collectors.toList());
+    public static List<TradingEvents> parseCsvData(TradingJob job) {
+        File[] files = collectInputFiles(job);
+        Semaphore readPermits = new Semaphore(job.getMaxReadsInFlight());
+        List<Callable<TradingEvents>> parsers = Arrays.stream(files).map(f -> new TradingFileParser(job, f, readPermits)).collect(Collectors.toList());
+        List<Future<TradingEvents>> futures = Try.of(() -> job.getExecutor().invokeAll(parsers)).get();
+        return futures.parallelStream().filter(Future::isDone).map(f -> Try.of(() -> f.get(1, TimeUnit.MINUTES)).get())
+                .filter(events -> job.getInstrumentFilter().isEmpty() || events == null || !events.getEvents().isEmpty())
+                .collect(Collectors.toList());
     }
 
     /**
      * Calculates result for all specified files ordered by exchange, date and ISIN.
-     * Result contains info about close/max/min prices and volume per instrument traded
+     * Result contains info about close/max/min prices and volume per instrument traded.
+     * Every day task adds its per-instrument stats to a {@link RankingAggregator} as soon as it is done,
+     * so rankings are fed while aggregates are being finalized
      *
+     * @param job - job the events were parsed for
      * @param allEvents - list of all {@link TradingEvents} objects
-     * @return {@link String} - result string
+     * @param rankings - {@link TradingRankings} to feed, could be null
+     * @return result rows separated with {@link System#lineSeparator()}
      */
-    public static String calculateResultString(List<TradingEvents> allEvents) {
-        List<Callable<List<String>>> resultsData = new ArrayList<>();
+    public static byte[] calculateResultBytes(TradingJob job, List<TradingEvents> allEvents, TradingRankings rankings) {
+        List<CalcTradingsResult> resultsData = new ArrayList<>();
+        Map<String, Integer> daysPerExchange = new HashMap<>();
         for (String exchange : Arrays.stream(Support.MARKETS).sorted().collect(Collectors.toList())) {
-            LocalDate cd = Support.getStartDateLD();
-            while (!cd.isAfter(Support.getEndDateLD())) {
+            LocalDate cd = job.getStartDate();
+            while (!cd.isAfter(job.getEndDate())) {
                 String fileDate = cd.format(Support.DATE_FORMAT);
                 List<TradingEvents> ev = new ArrayList<>(allEvents).stream()
                         .filter(oneDayEvents -> oneDayEvents.getFileName().contains(exchange + "-" + fileDate))
@@ -80,31 +91,59 @@ public class TradingParser {
                 if (!ev.isEmpty()) {
                     ev.parallelStream().forEach(e -> e.setExchange(exchange));
                     resultsData.add(new CalcTradingsResult(ev));
+                    daysPerExchange.merge(exchange, 1, Integer::sum);
                 }
                 cd = cd.plusDays(1);
             }
         }
-        resultsData.size();
-        List<Future<List<String>>> calcResultsFutures = Try.of(() -> executor.invokeAll(resultsData)).get();
-        List<List<String>> resultStrings = calcResultsFutures
+        if (rankings != null) {
+            RankingAggregator aggregator = new RankingAggregator(rankings, daysPerExchange);
+            resultsData.forEach(r -> r.aggregator = aggregator);
+        }
+        List<Future<byte[]>> calcResultsFutures = Try.of(() -> job.getExecutor().invokeAll(resultsData)).get();
+        List<byte[]> oneDayResults = calcResultsFutures
                 .stream()
                 .filter(Future::isDone)
                 .map(f -> Try.of(() -> f.get(1, TimeUnit.MINUTES))
                         .get())
                 .collect(Collectors.toList());
-        return resultStrings.stream().map(list -> list.stream().collect(Collectors.joining(System.lineSeparator()))).collect(Collectors.joining(System.lineSeparator()));
+        ResultRowFormatter result = new ResultRowFormatter();
+        for (int i = 0; i < oneDayResults.size(); i++) {
+            if (i > 0)
+                result.appendLineSeparator();
+            result.append(oneDayResults.get(i));
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Write encoded result into output
+     *
+     * @param job - job to write result for
+     * @param result - result rows, see {@link #calculateResultBytes(TradingJob, List, TradingRankings)}
+     */
+    public static void writeResult(TradingJob job, byte[] result) {
+        File file = new File(job.getOutputPath());
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file, false))) {
+            os.write(result);
+            os.write(System.lineSeparator().getBytes(Charset.defaultCharset()));
+        } catch (IOException e) {
+            // should probably log some errors here
+        }
     }
 
     /**
-     * Write result string into output
+     * Write rankings into ranking output
      *
-     * @param result - result string
+     * @param job - job to write rankings for
+     * @param rankings - rankings to write
      */
-    public static void writeResult(String result) {
-        File file = new File(Support.getOutputPath());
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file,false))) {
-            bw.write(result);
-            bw.newLine();
+    public static void writeRankings(TradingJob job, TradingRankings rankings) {
+        ResultRowFormatter formatter = new ResultRowFormatter();
+        rankings.write(formatter);
+        File file = new File(job.getRankingOutputPath());
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file, false))) {
+            formatter.writeTo(os);
         } catch (IOException e) {
             // should probably log some errors here
         }
@@ -112,51 +151,101 @@ public class TradingParser {
 
     /**
      * Parse data from a specified file and store it in TradingEvents object
+     * File is read with {@link ReadAheadLineReader}, so reading of next blocks overlaps with parsing.
+     * <p>
+     * If the job is filtered by instruments and the file has an up-to-date {@link InstrumentIndex}, only blocks
+     * with requested instruments are read, and the file isn't read at all if it has none of them.
+     * Files without index are parsed completely and indexed on the way
      *
+     * @param job - job with read-ahead settings and instrument filter
      * @param file - file to parse
+     * @param readPermits - limits number of reads in flight across all parsed files
      * @return {@link TradingEvents} - Object that stores parsed data of tradings
      */
-    private static TradingEvents parseEventsFromFile(File file) {
-        TradingEvents events;
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-             events = new TradingEvents(br.lines().map(TradingEvent::new).collect(Collectors.toList()));
-             events.setFileName(file.getName());
-             return events;
+    private static TradingEvents parseEventsFromFile(TradingJob job, File file, Semaphore readPermits) {
+        Set<String> instrumentFilter = job.getInstrumentFilter();
+        long fileLength = file.length();
+        long fileLastModified = file.lastModified();
+        InstrumentIndex index = InstrumentIndex.read(file);
+        long[] ranges = null;
+        if (index != null && !instrumentFilter.isEmpty()) {
+            if (!index.containsAny(instrumentFilter))
+                return newTradingEvents(file, new ArrayList<>());
+            ranges = index.getBlockRanges(instrumentFilter);
+        }
+        InstrumentIndex.Builder indexBuilder = index == null ? new InstrumentIndex.Builder(job.getIndexBlockSize()) : null;
+        List<TradingEvent> events = new ArrayList<>();
+        try (ReadAheadLineReader reader = new ReadAheadLineReader(file, ranges, job.getReadAheadBlockSize(), job.getReadsInFlightPerFile(), readPermits)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                TradingEvent event = new TradingEvent(line);
+                if (indexBuilder != null)
+                    indexBuilder.addLine(event.getInstrument(), reader.getLineOffset());
+                if (instrumentFilter.isEmpty() || instrumentFilter.contains(event.getInstrument()))
+                    events.add(event);
+            }
         } catch (IOException e) {
             // should probably log some errors here
+            return null;
         }
-        return null;
+        if (indexBuilder != null && file.length() == fileLength && file.lastModified() == fileLastModified)
+            indexBuilder.build(fileLength, fileLastModified).write(file);
+        return newTradingEvents(file, events);
+    }
+
+    private static TradingEvents newTradingEvents(File file, List<TradingEvent> events) {
+        TradingEvents tradingEvents = new TradingEvents(events);
+        tradingEvents.setFileName(file.getName());
+        return tradingEvents;
     }
 
     /**
      * Inner Callable class used to parse data from a single csv file
      */
     private static class TradingFileParser implements Callable<TradingEvents> {
+        TradingJob job;
         File file;
+        Semaphore readPermits;
 
-        public TradingFileParser(File file) {
+        public TradingFileParser(TradingJob job, File file, Semaphore readPermits) {
+            this.job = job;
             this.file = file;
+            this.readPermits = readPermits;
         }
 
         @Override
         public TradingEvents call() throws Exception {
-            return parseEventsFromFile(file);
+            return parseEventsFromFile(job, file, readPermits);
         }
     }
 
     /**
      * Inner Callable class used to calculate result data for one trading day (close/max/min prices and volume)
      */
-    private static class CalcTradingsResult implements Callable<List<String>> {
+    private static class CalcTradingsResult implements Callable<byte[]> {
+        /** Row buffers are reused by executor threads instead of being allocated for each trading day */
+        private static final ThreadLocal<ResultRowFormatter> formatters = ThreadLocal.withInitial(ResultRowFormatter::new);
         TradingEvents events;
+        /** Receives per-instrument stats of the day, null if rankings are not calculated */
+        RankingAggregator aggregator;
 
         public CalcTradingsResult(List<TradingEvents> events) {
             this.events = mergeOneDayResults(events);
         }
 
         @Override
-        public List<String> call() throws Exception {
-            return events.getTradedInstruments().stream().sorted().parallel().map(i -> events.calculateResult(i)).collect(Collectors.toList());
+        public byte[] call() throws Exception {
+            ResultRowFormatter formatter = formatters.get().reset();
+            List<String> instruments = events.getTradedInstruments().stream().sorted().collect(Collectors.toList());
+            List<InstrumentStats> stats = new ArrayList<>(instruments.size());
+            for (int i = 0; i < instruments.size(); i++) {
+                if (i > 0)
+                    formatter.appendLineSeparator();
+                stats.add(events.calculateResult(instruments.get(i), formatter));
+            }
+            if (aggregator != null)
+                aggregator.addDay(events.getExchange(), stats);
+            return formatter.toByteArray();
         }
     }
 
@@ -0,0 +1,114 @@
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+/**
+ * Top-K rankings of instruments over the whole [startDate, endDate] window, per exchange and across all exchanges:
+ * by volume, by range (max - min) / min and by close-to-close move.
+ * Rankings are fed with window aggregates one by one (see {@link RankingAggregator}) and keep only K best instruments each.
+ * Aggregates across all exchanges are combined by ISIN and have {@link #ALL_EXCHANGES} as their exchange.
+ */
+public class TradingRankings {
+    /** Scope name of rankings across all exchanges */
+    public static final String ALL_EXCHANGES = "all";
+
+    /**
+     * Supported rankings. Each one knows how to compare aggregates and how to write the ranked value
+     */
+    public enum Ranking {
+        VOLUME(Comparator.comparingLong(InstrumentStats::getVolume),
+                InstrumentStats::getVolume, false),
+        RANGE(Comparator.comparingDouble(InstrumentStats::getRange),
+                s -> Math.round(s.getRange() * 10000), true),
+        MOVE(Comparator.comparingDouble(s -> Math.abs(s.getMove())),
+                s -> Math.round(s.getMove() * 10000), true);
+
+        /** Ties are broken by exchange and instrument, so that rankings don't depend on the order of feeding */
+        private final Comparator<InstrumentStats> comparator;
+        private final ToLongFunction<InstrumentStats> value;
+        private final boolean percent;
+
+        Ranking(Comparator<InstrumentStats> comparator, ToLongFunction<InstrumentStats> value, boolean percent) {
+            this.comparator = comparator
+                    .thenComparing(InstrumentStats::getExchange, Comparator.reverseOrder())
+                    .thenComparing(InstrumentStats::getInstrument, Comparator.reverseOrder());
+            this.value = value;
+            this.percent = percent;
+        }
+
+        /**
+         * Writes ranked value: volume as is, ratios as percents with two decimals
+         */
+        void writeValue(InstrumentStats stats, ResultRowFormatter formatter) {
+            if (percent)
+                formatter.appendHundredths(value.applyAsLong(stats));
+            else
+                formatter.appendLong(value.applyAsLong(stats));
+        }
+
+        public String getName() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final int size;
+    private final Map<String, Map<Ranking, TopK<InstrumentStats>>> rankings = new TreeMap<>();
+
+    /**
+     * @param size - how many instruments to keep in each ranking
+     */
+    public TradingRankings(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Feeds window aggregate of an instrument into rankings of its exchange ({@link #ALL_EXCHANGES} for aggregates by ISIN)
+     *
+     * @param stats - aggregate that won't change anymore
+     */
+    public synchronized void offer(InstrumentStats stats) {
+        Map<Ranking, TopK<InstrumentStats>> scopeRankings = rankings.computeIfAbsent(stats.getExchange(), s -> new EnumMap<>(Ranking.class));
+        for (Ranking ranking : Ranking.values())
+            scopeRankings.computeIfAbsent(ranking, r -> new TopK<>(size, r.comparator)).offer(stats);
+    }
+
+    /**
+     * Get ranked instruments
+     *
+     * @param scope - exchange name or {@link #ALL_EXCHANGES}
+     * @param ranking - ranking
+     * @return a {@link List} of at most {@code size} aggregates from the best one
+     */
+    public synchronized List<InstrumentStats> getRanking(String scope, Ranking ranking) {
+        Map<Ranking, TopK<InstrumentStats>> scopeRankings = rankings.get(scope);
+        if (scopeRankings == null || !scopeRankings.containsKey(ranking))
+            return Collections.emptyList();
+        return scopeRankings.get(ranking).toList();
+    }
+
+    /**
+     * Writes all rankings as csv rows: ranking, scope, rank, exchange, instrument, value.
+     * Exchanges go in alphabetical order followed by {@link #ALL_EXCHANGES}
+     *
+     * @param formatter - a {@link ResultRowFormatter} rows are appended to, each followed by line separator
+     */
+    public synchronized void write(ResultRowFormatter formatter) {
+        List<String> scopes = new ArrayList<>(rankings.keySet());
+        if (scopes.remove(ALL_EXCHANGES))
+            scopes.add(ALL_EXCHANGES);
+        for (String scope : scopes) {
+            for (Ranking ranking : Ranking.values()) {
+                List<InstrumentStats> ranked = getRanking(scope, ranking);
+                for (int i = 0; i < ranked.size(); i++) {
+                    InstrumentStats stats = ranked.get(i);
+                    formatter.append(ranking.getName()).appendFieldSeparator()
+                            .append(scope).appendFieldSeparator()
+                            .appendLong(i + 1).appendFieldSeparator()
+                            .append(stats.getExchange()).appendFieldSeparator()
+                            .append(stats.getInstrument()).appendFieldSeparator();
+                    ranking.writeValue(stats, formatter);
+                    formatter.appendLineSeparator();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A core-sized pool of worker threads shared by all jobs running in the JVM.
+ * Each job submits its tasks through its own {@link JobExecutor}. Workers take tasks from job executors in round-robin,
+ * so a job with thousands of files doesn't make a job submitted after it wait for all of them.
+ */
+public class TradingWorkerPool {
+    private static final TradingWorkerPool SHARED = new TradingWorkerPool(Runtime.getRuntime().availableProcessors());
+
+    /** Job executors that have queued tasks. Each one is queued at most once */
+    private final BlockingQueue<JobExecutor> readyJobs = new LinkedBlockingQueue<>();
+    private final int threads;
+
+    /**
+     * Creates a pool with specified number of daemon worker threads
+     *
+     * @param threads - number of worker threads
+     */
+    public TradingWorkerPool(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Number of threads should be positive: " + threads);
+        this.threads = threads;
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("TradingWorker-%d")
+                .setDaemon(true)
+                .build();
+        for (int i = 0; i < threads; i++)
+            threadFactory.newThread(this::runWorker).start();
+    }
+
+    /**
+     * Get the pool shared by all jobs in the JVM. It has as many threads as there are available processors
+     *
+     * @return shared {@link TradingWorkerPool}
+     */
+    public static TradingWorkerPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Creates an executor for one job. Tasks of one job run in submission order,
+     * tasks of different jobs share the workers fairly
+     *
+     * @return new {@link JobExecutor}
+     */
+    public JobExecutor newJobExecutor() {
+        return new JobExecutor();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    private void runWorker() {
+        while (true) {
+            JobExecutor job;
+            try {
+                job = readyJobs.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Runnable task = job.takeTask();
+            if (task == null)
+                continue;
+            try {
+                task.run();
+            } catch (Throwable e) {
+                // keep the worker alive even after an Error, tasks submitted with submit/invokeAll never get there
+                Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+            }
+        }
+    }
+
+    /**
+     * A per-job view of the pool. It has no threads of its own, so it doesn't have to be shut down when the job is done
+     */
+    public class JobExecutor extends AbstractExecutorService {
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicInteger running = new AtomicInteger();
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            if (shutdown)
+                throw new RejectedExecutionException("Job executor is shut down");
+            tasks.add(command);
+            schedule();
+        }
+
+        /**
+         * Takes next task of the job and puts the job back to the end of the ready queue if it has more tasks
+         */
+        private Runnable takeTask() {
+            running.incrementAndGet();
+            Runnable task = tasks.poll();
+            if (task == null)
+                running.decrementAndGet();
+            scheduled.set(false);
+            if (!tasks.isEmpty())
+                schedule();
+            if (task == null)
+                return null;
+            return () -> {
+                try {
+                    task.run();
+                } finally {
+                    if (running.decrementAndGet() == 0 && tasks.isEmpty())
+                        signalIfTerminated();
+                }
+            };
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true))
+                readyJobs.add(this);
+        }
+
+        private synchronized void signalIfTerminated() {
+            if (isTerminated())
+                notifyAll();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+            signalIfTerminated();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            List<Runnable> notStarted = new ArrayList<>();
+            Runnable task;
+            while ((task = tasks.poll()) != null)
+                notStarted.add(task);
+            signalIfTerminated();
+            return notStarted;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && tasks.isEmpty() && running.get() == 0;
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            return true;
+        }
+    }
+}